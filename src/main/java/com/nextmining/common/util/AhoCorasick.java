@@ -0,0 +1,238 @@
+package com.nextmining.common.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton over the UTF-8 bytes of a set of terms.
+ * <p/>
+ * The automaton is built once and then finds any of the terms in a byte slice with a single pass
+ * over the slice, so the cost per slice does not depend on the number of terms. Besides
+ * substring search it answers prefix and whole-slice(exact) matches by walking the trie only.
+ * <p/>
+ * Transitions of the root are held in a dense table; the other states keep their transitions
+ * sorted in shared arrays and are looked up by binary search.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm">Aho-Corasick algorithm</a>
+ */
+public class AhoCorasick {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String[] terms;
+
+	/* transitions of the root state, indexed by unsigned byte */
+	private final int[] rootNext = new int[256];
+
+	/* transitions of state s are edgeLabel/edgeTarget[edgeStart[s] .. edgeStart[s + 1]) */
+	private final int[] edgeStart;
+	private final byte[] edgeLabel;
+	private final int[] edgeTarget;
+
+	private final int[] fail;
+	/* the term ending at the state, or -1 */
+	private final int[] output;
+	/* the nearest state on the failure chain with an output, or -1 */
+	private final int[] outputLink;
+
+	public AhoCorasick(List<String> terms) {
+		List<String> distinct = new ArrayList<String>();
+		// trie under construction: (state << 8 | byte) -> child state
+		Map<Long, Integer> trie = new HashMap<Long, Integer>();
+		List<Integer> termOfState = new ArrayList<Integer>();
+		termOfState.add(-1);
+
+		for (String term : terms) {
+			byte[] bytes = term.getBytes(UTF8);
+			if (bytes.length == 0) {
+				continue;
+			}
+			int state = 0;
+			for (byte b : bytes) {
+				Long edge = ((long) state << 8) | (b & 0xff);
+				Integer child = trie.get(edge);
+				if (child == null) {
+					child = termOfState.size();
+					termOfState.add(-1);
+					trie.put(edge, child);
+				}
+				state = child;
+			}
+			if (termOfState.get(state) < 0) {
+				termOfState.set(state, distinct.size());
+				distinct.add(term);
+			}
+		}
+
+		this.terms = distinct.toArray(new String[distinct.size()]);
+		int numStates = termOfState.size();
+
+		// compact the trie into edge arrays sorted by (state, unsigned label)
+		long[] keys = new long[trie.size()];
+		int n = 0;
+		for (Long key : trie.keySet()) {
+			keys[n++] = key;
+		}
+		Arrays.sort(keys);
+
+		edgeStart = new int[numStates + 1];
+		edgeLabel = new byte[n];
+		edgeTarget = new int[n];
+		for (int i = 0; i < n; i++) {
+			int state = (int) (keys[i] >>> 8);
+			edgeLabel[i] = (byte) keys[i];
+			edgeTarget[i] = trie.get(keys[i]);
+			edgeStart[state + 1]++;
+		}
+		for (int s = 0; s < numStates; s++) {
+			edgeStart[s + 1] += edgeStart[s];
+		}
+		for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+			rootNext[edgeLabel[e] & 0xff] = edgeTarget[e];
+		}
+
+		output = new int[numStates];
+		for (int s = 0; s < numStates; s++) {
+			output[s] = termOfState.get(s);
+		}
+
+		// failure and output links in breadth-first order
+		fail = new int[numStates];
+		outputLink = new int[numStates];
+		outputLink[0] = -1;
+		int[] queue = new int[numStates];
+		int head = 0;
+		int tail = 0;
+		for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+			int child = edgeTarget[e];
+			fail[child] = 0;
+			outputLink[child] = -1;
+			queue[tail++] = child;
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+				int child = edgeTarget[e];
+				int f = next(fail[state], edgeLabel[e]);
+				fail[child] = f;
+				outputLink[child] = output[f] >= 0 ? f : outputLink[f];
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of distinct terms.
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * @return the term with the given id, as returned by the match methods.
+	 */
+	public String getTerm(int id) {
+		return terms[id];
+	}
+
+	/**
+	 * Finds a term occurring anywhere in {@code b[start, end)}.
+	 *
+	 * @return the id of the term of the occurrence which ends first, or -1 if none occurs.
+	 */
+	public int find(byte[] b, int start, int end) {
+		int state = 0;
+		for (int i = start; i < end; i++) {
+			state = next(state, b[i]);
+			if (output[state] >= 0) {
+				return output[state];
+			}
+			if (outputLink[state] >= 0) {
+				return output[outputLink[state]];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the longest term which is a prefix of {@code b[start, end)}.
+	 *
+	 * @return the id of the term, or -1 if no term is a prefix.
+	 */
+	public int matchPrefix(byte[] b, int start, int end) {
+		int state = 0;
+		int match = -1;
+		for (int i = start; i < end; i++) {
+			state = child(state, b[i]);
+			if (state < 0) {
+				break;
+			}
+			if (output[state] >= 0) {
+				match = output[state];
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * @return the id of the term equal to {@code b[start, end)}, or -1 if there is none.
+	 */
+	public int matchExact(byte[] b, int start, int end) {
+		int state = 0;
+		for (int i = start; i < end; i++) {
+			state = child(state, b[i]);
+			if (state < 0) {
+				return -1;
+			}
+		}
+		return output[state];
+	}
+
+	/**
+	 * @return the trie child of the state for the byte, or -1.
+	 */
+	private int child(int state, byte b) {
+		if (state == 0) {
+			int next = rootNext[b & 0xff];
+			return next == 0 ? -1 : next;
+		}
+		int low = edgeStart[state];
+		int high = edgeStart[state + 1] - 1;
+		int label = b & 0xff;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midLabel = edgeLabel[mid] & 0xff;
+			if (midLabel < label) {
+				low = mid + 1;
+			}
+			else if (midLabel > label) {
+				high = mid - 1;
+			}
+			else {
+				return edgeTarget[mid];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the automaton transition of the state for the byte, following failure links.
+	 */
+	private int next(int state, byte b) {
+		while (true) {
+			if (state == 0) {
+				return rootNext[b & 0xff];
+			}
+			int child = child(state, b);
+			if (child >= 0) {
+				return child;
+			}
+			state = fail[state];
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.nextmining.course.hadoop.ncdc;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.IOException;
+
+/**
+ * NCDC 기온 기록을 줄 단위로 읽어 재사용하는 {@link NcdcRecordWritable}에 바로 파싱하는 InputFormat.
+ * <p/>
+ * 줄을 나누는 것은 {@link LineRecordReader}와 같고, 줄의 바이트에서 필드를 읽으므로 레코드마다
+ * String을 만들지 않는다. 파싱할 수 없는 줄(짧거나 숫자 필드가 깨진 줄)은 건너뛰고
+ * {@link Counter#UNPARSABLE_LINES}로 센다. 기온 필드만 깨진 줄은
+ * {@link NcdcRecordWritable#isMalformedTemperature()}로 넘긴다.
+ * <p/>
+ * TextInputFormat 대신 쓰려면 job.setInputFormatClass(NcdcInputFormat.class)로 바꾸고 mapper의
+ * 입력 value 타입을 NcdcRecordWritable로 바꾸면 된다.
+ *
+ * @author Younggue Bae
+ */
+public class NcdcInputFormat extends FileInputFormat<LongWritable, NcdcRecordWritable> {
+
+    public enum Counter {
+        UNPARSABLE_LINES
+    }
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        // TextInputFormat과 같다.
+        CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+        return codec == null || codec instanceof SplittableCompressionCodec;
+    }
+
+    @Override
+    public RecordReader<LongWritable, NcdcRecordWritable> createRecordReader(InputSplit split,
+                                                                          TaskAttemptContext context) {
+        return new NcdcRecordReader();
+    }
+
+    /**
+     * NcdcRecordReader
+     */
+    public static class NcdcRecordReader extends RecordReader<LongWritable, NcdcRecordWritable> {
+
+        private final LineRecordReader lineReader = new LineRecordReader();
+        private final NcdcRecordWritable value = new NcdcRecordWritable();
+        private TaskAttemptContext context;
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            this.context = context;
+            lineReader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            while (lineReader.nextKeyValue()) {
+                Text line = lineReader.getCurrentValue();
+                try {
+                    value.parse(line.getBytes(), 0, line.getLength());
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    context.getCounter(Counter.UNPARSABLE_LINES).increment(1);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() throws IOException, InterruptedException {
+            return lineReader.getCurrentKey();
+        }
+
+        @Override
+        public NcdcRecordWritable getCurrentValue() throws IOException, InterruptedException {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return lineReader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lineReader.close();
+        }
+    }
+
+}
@@ -3,6 +3,9 @@ package com.nextmining.course.hadoop.ncdc;
 import com.nextmining.hadoop.io.IntPairWritable;
 import com.nextmining.hadoop.io.TextPairWritable;
 import com.nextmining.hadoop.mapreduce.AbstractJob;
+import com.nextmining.hadoop.mapreduce.LineSampler;
+import com.nextmining.hadoop.mapreduce.SkewedKeys;
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
@@ -20,12 +23,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Join job.
+ * <p/>
+ * With {@code --skewJoin}, the stations with the most records in a sample of the NCDC input are
+ * split over several reducers(see {@link SkewedKeys}).
  *
  * @author Younggue Bae
  */
@@ -50,6 +58,9 @@ public class NcdcJoinJob extends AbstractJob {
         addOption("inputNcdc", null, "The path for job input(ncdc)", true);
         addOption("inputStation", null, "The path for job input(station)", true);
         addOption("output", "o", "The path for job output", true);
+        addFlag("skewJoin", null, "Split the stations with the most records over several reducers");
+        addOption("skewThreshold", null, "The share of the sampled records from which a station is heavy(The default is half a reducer's share)", false);
+        addOption("saltBuckets", null, "The number of reducers to split a heavy station over(The default is the number of reducers)", false);
 
         parseArguments(args);
 
@@ -82,15 +93,70 @@ public class NcdcJoinJob extends AbstractJob {
 
         FileOutputFormat.setOutputPath(job, outputPath);
 
+        if (hasOption("skewJoin")) {
+            setHeavyStations(job, inputNcdcPath, Double.parseDouble(getOption("skewThreshold", "-1")),
+                    Integer.parseInt(getOption("saltBuckets", "-1")));
+        }
+
         return job.waitForCompletion(true) ? 0 : 1;
     }
 
+    /**
+     * 기온 기록 데이터를 샘플링해서 레코드가 많은 기상청을 여러 reducer로 나누도록 설정한다.
+     */
+    private void setHeavyStations(Job job, Path inputNcdcPath, double skewThreshold, int saltBuckets)
+            throws IOException, InterruptedException {
+        int numReducers = job.getNumReduceTasks();
+        if (numReducers < 2) {
+            logger.warn("Heavy stations are not salted(one reducer)");
+            return;
+        }
+
+        Job sampleJob = Job.getInstance(job.getConfiguration());
+        FileInputFormat.addInputPath(sampleJob, inputNcdcPath);
+        NcdcRecordWritable record = new NcdcRecordWritable();
+        List<Text> stationIds = new ArrayList<Text>();
+        for (Text line : new LineSampler(10000, 10).sample(sampleJob)) {
+            try {
+                record.parse(line.getBytes(), 0, line.getLength());
+            } catch (RuntimeException e) {
+                continue;
+            }
+            stationIds.add(new Text(record.getStationId()));
+        }
+
+        List<Text> heavyStations = SkewedKeys.findHeavyKeys(stationIds,
+                skewThreshold < 0 ? 0.5 / numReducers : skewThreshold);
+        logger.info("heavy stations == " + heavyStations);
+        if (!heavyStations.isEmpty()) {
+            SkewedKeys.setHeavyKeys(job.getConfiguration(), heavyStations,
+                    saltBuckets < 0 ? Math.min(numReducers, SkewedKeys.MAX_SALT_BUCKETS) : saltBuckets);
+        }
+    }
+
     /**
      * Partitioner.
      */
-    public static class KeyPartitioner extends Partitioner<TextPairWritable, Text> {
+    public static class KeyPartitioner extends Partitioner<TextPairWritable, Text> implements Configurable {
+        private Configuration conf;
+        private SkewedKeys skewedKeys;
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            skewedKeys = SkewedKeys.isSkewed(conf) ? new SkewedKeys(conf) : null;
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+
         @Override
         public int getPartition(TextPairWritable key, Text value, int numPartitions) {
+            if (skewedKeys != null) {
+                return skewedKeys.getPartition(key.getFirst(), numPartitions);
+            }
             return (key.getFirst().hashCode() & Integer.MAX_VALUE) % numPartitions;
         }
     }
@@ -99,13 +165,27 @@ public class NcdcJoinJob extends AbstractJob {
      * JoinRecordMapper.
      */
     public static class JoinRecordMapper extends Mapper<LongWritable, Text, TextPairWritable, Text> {
-        private NcdcRecordParser parser = new NcdcRecordParser();
+        // 줄 전체를 value로 넘기므로 NcdcInputFormat 대신 줄의 바이트를 파싱한다.
+        private NcdcRecordWritable record = new NcdcRecordWritable();
+        private SkewedKeys skewedKeys;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            if (SkewedKeys.isSkewed(context.getConfiguration())) {
+                skewedKeys = new SkewedKeys(context.getConfiguration());
+            }
+        }
 
         @Override
         protected void map(LongWritable key, Text value, Context context)
                 throws IOException, InterruptedException {
-            parser.parse(value);
-            context.write(new TextPairWritable(parser.getStationId(), "2"), value);
+            record.parse(value.getBytes(), 0, value.getLength());
+            TextPairWritable outKey = new TextPairWritable(record.getStationId(), "2");
+            if (skewedKeys != null && skewedKeys.isHeavy(outKey.getFirst())) {
+                // 레코드가 많은 기상청은 salt 중 하나로 보낸다.
+                skewedKeys.salt(outKey.getFirst());
+            }
+            context.write(outKey, value);
         }
     }
 
@@ -114,13 +194,32 @@ public class NcdcJoinJob extends AbstractJob {
      */
     public static class JoinStationMapper extends Mapper<LongWritable, Text, TextPairWritable, Text> {
         private NcdcStationMetadataParser parser = new NcdcStationMetadataParser();
+        private SkewedKeys skewedKeys;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            if (SkewedKeys.isSkewed(context.getConfiguration())) {
+                skewedKeys = new SkewedKeys(context.getConfiguration());
+            }
+        }
 
         @Override
         protected void map(LongWritable key, Text value, Context context)
                 throws IOException, InterruptedException {
             if (parser.parse(value)) {
-                context.write(new TextPairWritable(parser.getStationId(), "1"),
-                        new Text(parser.getStationName()));
+                Text stationId = new Text(parser.getStationId());
+                Text stationName = new Text(parser.getStationName());
+                if (skewedKeys != null && skewedKeys.isHeavy(stationId)) {
+                    // 레코드가 많은 기상청의 이름은 모든 salt로 복제한다.
+                    for (int salt = 0; salt < skewedKeys.getSaltBuckets(); salt++) {
+                        Text saltedId = new Text(stationId);
+                        skewedKeys.salt(saltedId, salt);
+                        context.write(new TextPairWritable(saltedId, new Text("1")), stationName);
+                    }
+                }
+                else {
+                    context.write(new TextPairWritable(stationId, new Text("1")), stationName);
+                }
             }
         }
     }
@@ -129,16 +228,29 @@ public class NcdcJoinJob extends AbstractJob {
      * NcdcJoinReducer.
      */
     public static class NcdcJoinReducer extends Reducer<TextPairWritable, Text, Text, Text> {
+        private SkewedKeys skewedKeys;
+
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            if (SkewedKeys.isSkewed(context.getConfiguration())) {
+                skewedKeys = new SkewedKeys(context.getConfiguration());
+            }
+        }
 
         @Override
         protected void reduce(TextPairWritable key, Iterable<Text> values, Context context)
                 throws IOException, InterruptedException {
             Iterator<Text> iter = values.iterator();
             Text stationName = new Text(iter.next());   // JoinStationMapper를 통해서 기상청 이름이 맨 먼저 들어오기 때문에 기상청 이름을 저장해 놓는다.
+            Text stationId = key.getFirst();
+            if (skewedKeys != null) {
+                stationId = new Text(stationId);
+                skewedKeys.unsalt(stationId);   // salt를 떼어낸 기상청 ID를 출력한다.
+            }
             while (iter.hasNext()) {    // 두번째 데이터 부터는 JoinRecordMapper를 통해서 기온 기록 데이터가 들어온다.
                 Text record = iter.next();
                 Text outValue = new Text(stationName.toString() + "\t" + record.toString());
-                context.write(key.getFirst(), outValue);
+                context.write(stationId, outValue);
             }
         }
     }
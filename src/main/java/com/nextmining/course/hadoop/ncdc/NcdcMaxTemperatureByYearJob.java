@@ -11,7 +11,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
@@ -60,7 +59,7 @@ public class NcdcMaxTemperatureByYearJob extends AbstractJob {
         job.setOutputValueClass(IntWritable.class);
         job.setMapperClass(NcdcMaxTemperatureMapper.class);
         job.setReducerClass(NcdcMaxTemperatureReducer.class);
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.addInputPath(job, inputPath);
@@ -73,16 +72,13 @@ public class NcdcMaxTemperatureByYearJob extends AbstractJob {
      * Mapper.
      */
     public static class NcdcMaxTemperatureMapper
-            extends Mapper<LongWritable, Text, Text, IntWritable> {
-        private NcdcRecordParser parser = new NcdcRecordParser();
+            extends Mapper<LongWritable, NcdcRecordWritable, Text, IntWritable> {
 
         @Override
-        protected void map(LongWritable key, Text value, Context context)
+        protected void map(LongWritable key, NcdcRecordWritable value, Context context)
                 throws IOException, InterruptedException {
-            parser.parse(value);
-
-            if (parser.isValidTemperature()) {
-                context.write(new Text(parser.getYear()), new IntWritable(parser.getAirTemperature()));
+            if (value.isValidTemperature()) {
+                context.write(new Text(String.valueOf(value.getYear())), new IntWritable(value.getAirTemperature()));
             }
         }
     }
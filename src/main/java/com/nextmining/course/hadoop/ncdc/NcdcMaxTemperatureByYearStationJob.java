@@ -11,7 +11,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
@@ -70,7 +69,7 @@ public class NcdcMaxTemperatureByYearStationJob extends AbstractJob {
         job.setOutputValueClass(IntWritable.class);
         job.setMapperClass(NcdcMaxTemperatureMapper.class);
         job.setReducerClass(NcdcMaxTemperatureReducer.class);
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.setInputPaths(job, inputPaths.toArray(new Path[inputPaths.size()]));
@@ -84,19 +83,16 @@ public class NcdcMaxTemperatureByYearStationJob extends AbstractJob {
      * Mapper.
      */
     public static class NcdcMaxTemperatureMapper
-            extends Mapper<LongWritable, Text, TextPairWritable, IntWritable> {
-
-        private NcdcRecordParser parser = new NcdcRecordParser();
+            extends Mapper<LongWritable, NcdcRecordWritable, TextPairWritable, IntWritable> {
 
         @Override
-        protected void map(LongWritable key, Text value,
+        protected void map(LongWritable key, NcdcRecordWritable value,
                            Context context) throws IOException, InterruptedException {
-            parser.parse(value);
-            String year = parser.getYear();
-            String stationId = parser.getStationId();
-            int airTemperature = parser.getAirTemperature();
+            String year = String.valueOf(value.getYear());
+            String stationId = value.getStationId();
+            int airTemperature = value.getAirTemperature();
             
-            if (parser.isValidTemperature()) {
+            if (value.isValidTemperature()) {
                 // --------------> START
                 /*
                  * --------------------------------------------------------------
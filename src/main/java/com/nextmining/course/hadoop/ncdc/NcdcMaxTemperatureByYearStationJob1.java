@@ -12,7 +12,6 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
@@ -74,7 +73,7 @@ public class NcdcMaxTemperatureByYearStationJob1 extends AbstractJob {
         job.setReducerClass(NcdcMaxTemperatureReducer.class);
         job.setPartitionerClass(KeyPartitioner.class);    // Partitioner
         job.setGroupingComparatorClass(TextPairWritable.FirstComparator.class);  // Group comparator
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.setInputPaths(job, inputPaths.toArray(new Path[inputPaths.size()]));
@@ -100,17 +99,14 @@ public class NcdcMaxTemperatureByYearStationJob1 extends AbstractJob {
      * Mapper.
      */
     public static class NcdcMaxTemperatureMapper
-            extends Mapper<LongWritable, Text, TextPairWritable, IntWritable> {
-
-        private NcdcRecordParser parser = new NcdcRecordParser();
+            extends Mapper<LongWritable, NcdcRecordWritable, TextPairWritable, IntWritable> {
 
         @Override
-        protected void map(LongWritable key, Text value,
+        protected void map(LongWritable key, NcdcRecordWritable value,
                            Context context) throws IOException, InterruptedException {
-            parser.parse(value);
-            if (parser.isValidTemperature()) {
-                context.write(new TextPairWritable(parser.getYear(), parser.getStationId()),
-                        new IntWritable(parser.getAirTemperature()));
+            if (value.isValidTemperature()) {
+                context.write(new TextPairWritable(String.valueOf(value.getYear()), value.getStationId()),
+                        new IntWritable(value.getAirTemperature()));
             }
         }
     }
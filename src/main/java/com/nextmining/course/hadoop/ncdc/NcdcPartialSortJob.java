@@ -9,7 +9,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
@@ -66,7 +65,7 @@ public class NcdcPartialSortJob extends AbstractJob {
         job.setOutputValueClass(NullWritable.class);
         job.setMapperClass(NcdcPartialSortMapper.class);
         job.setReducerClass(NcdcPartialSortReducer.class);
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.setInputPaths(job, inputPaths.toArray(new Path[inputPaths.size()]));
@@ -106,27 +105,23 @@ public class NcdcPartialSortJob extends AbstractJob {
     /**
      * Mapper.
      */
-    public static class NcdcPartialSortMapper extends Mapper<LongWritable, Text, IntWritable, Text> {
-
-        private NcdcRecordParser parser = new NcdcRecordParser();
+    public static class NcdcPartialSortMapper extends Mapper<LongWritable, NcdcRecordWritable, IntWritable, Text> {
 
         @Override
-        public void map(LongWritable key, Text value, Context context)
+        public void map(LongWritable key, NcdcRecordWritable value, Context context)
                 throws IOException, InterruptedException {
 
-            parser.parse(value);
-
-            if (parser.isValidTemperature()) {
-                String year = parser.getYear();
-                int airTemperature = parser.getAirTemperature();
+            if (value.isValidTemperature()) {
+                int year = value.getYear();
+                int airTemperature = value.getAirTemperature();
 
                 context.write(new IntWritable(airTemperature), new Text(year + "\t" + airTemperature));
             }
-            else if (parser.isMalformedTemperature()) {
+            else if (value.isMalformedTemperature()) {
                 System.err.println("Ignoring possibly corrupt input: " + value);
                 context.getCounter(Temperature.MALFORMED).increment(1);
             }
-            else if (parser.isMissingTemperature()) {
+            else if (value.isMissingTemperature()) {
                 context.getCounter(Temperature.MISSING).increment(1);
             }
         }
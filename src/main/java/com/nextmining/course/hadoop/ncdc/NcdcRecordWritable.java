@@ -0,0 +1,191 @@
+package com.nextmining.course.hadoop.ncdc;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * NCDC 기온 기록 한 줄의 필드를 primitive 값으로 담는 Writable.
+ * <p/>
+ * {@link #parse(byte[], int, int)}는 고정 폭 레코드의 ASCII 바이트에서 바로 필드를 읽으므로
+ * {@link NcdcRecordParser}와 달리 String 객체를 만들지 않는다. 기상대 ID(USAF 6자리와 WBAN
+ * 5자리)는 36진수 long 하나로, 관측 시각은 UTC 기준 1970년부터의 분(epoch minutes)으로 담는다.
+ *
+ * @author Younggue Bae
+ */
+public class NcdcRecordWritable implements Writable {
+
+    public static final int MISSING_TEMPERATURE = 9999;
+
+    /** 한 레코드에서 읽는 최소 길이(품질 코드까지) */
+    public static final int MIN_LENGTH = 93;
+
+    private static final int STATION_ID_LENGTH = 11;
+
+    private long stationId;
+    private int year;
+    private long epochMinutes;
+    private int airTemperature;
+    private boolean airTemperatureMalformed;
+    private byte quality;
+
+    /**
+     * 레코드 한 줄의 바이트를 파싱한다.
+     *
+     * @throws IllegalArgumentException 줄이 짧거나 숫자 필드에 숫자가 아닌 문자가 있는 경우
+     */
+    public void parse(byte[] b, int start, int length) {
+        if (length < MIN_LENGTH) {
+            throw new IllegalArgumentException("The record is too short: " + length + " bytes");
+        }
+
+        long station = 0;
+        for (int i = start + 4; i < start + 15; i++) {
+            station = station * 36 + base36(b[i]);
+        }
+        stationId = station;
+
+        year = digits(b, start + 15, 4);
+        int month = digits(b, start + 19, 2);
+        int day = digits(b, start + 21, 2);
+        int hour = digits(b, start + 23, 2);
+        int minute = digits(b, start + 25, 2);
+        epochMinutes = (daysFromCivil(year, month, day) * 24 + hour) * 60 + minute;
+
+        airTemperatureMalformed = false;
+        byte sign = b[start + 87];
+        if (sign == '+') {
+            airTemperature = digits(b, start + 88, 4);
+        } else if (sign == '-') {
+            airTemperature = -digits(b, start + 88, 4);
+        } else {
+            airTemperature = 0;
+            airTemperatureMalformed = true;
+        }
+        quality = b[start + 92];
+    }
+
+    private static int digits(byte[] b, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a digit at " + i + ": " + (char) (b[i] & 0xff));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int base36(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        throw new NumberFormatException("Not a station id character: " + (char) (c & 0xff));
+    }
+
+    /**
+     * @return 1970-01-01부터의 일 수(그레고리력, 음수는 그 이전)
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    public boolean isValidTemperature() {
+        return !airTemperatureMalformed && airTemperature != MISSING_TEMPERATURE
+                && (quality == '0' || quality == '1' || quality == '4' || quality == '5' || quality == '9');
+    }
+
+    public boolean isMalformedTemperature() {
+        return airTemperatureMalformed;
+    }
+
+    public boolean isMissingTemperature() {
+        return airTemperature == MISSING_TEMPERATURE;
+    }
+
+    /**
+     * @return 36진수로 묶은 기상대 ID, 숫자로만 된 ID끼리는 문자열과 같은 순서다.
+     */
+    public long getStationIdPacked() {
+        return stationId;
+    }
+
+    /**
+     * @return USAF-WBAN 형식의 기상대 ID(예: 011990-99999)
+     */
+    public String getStationId() {
+        char[] chars = new char[STATION_ID_LENGTH + 1];
+        long station = stationId;
+        for (int i = STATION_ID_LENGTH; i >= 0; i--) {
+            if (i == 6) {
+                chars[i] = '-';
+                continue;
+            }
+            chars[i] = Character.toUpperCase(Character.forDigit((int) (station % 36), 36));
+            station /= 36;
+        }
+        return new String(chars);
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * @return UTC 기준 1970-01-01 00:00부터의 분
+     */
+    public long getEpochMinutes() {
+        return epochMinutes;
+    }
+
+    public Date getObservationDate() {
+        return new Date(epochMinutes * 60 * 1000);
+    }
+
+    public int getAirTemperature() {
+        return airTemperature;
+    }
+
+    public byte getQuality() {
+        return quality;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(stationId);
+        out.writeInt(year);
+        out.writeLong(epochMinutes);
+        out.writeInt(airTemperature);
+        out.writeBoolean(airTemperatureMalformed);
+        out.writeByte(quality);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        stationId = in.readLong();
+        year = in.readInt();
+        epochMinutes = in.readLong();
+        airTemperature = in.readInt();
+        airTemperatureMalformed = in.readBoolean();
+        quality = in.readByte();
+    }
+
+    @Override
+    public String toString() {
+        return getStationId() + "\t" + epochMinutes + "\t"
+                + (airTemperatureMalformed ? "malformed" : String.valueOf(airTemperature)) + "\t" + (char) quality;
+    }
+
+}
@@ -10,7 +10,6 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
@@ -73,7 +72,7 @@ public class NcdcSecondarySortJob extends AbstractJob {
         job.setPartitionerClass(FirstPartitioner.class);    // Partitioner
         job.setSortComparatorClass(KeyComparator.class);    // Sort comparator
         job.setGroupingComparatorClass(GroupComparator.class);  // Group comparator
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.setInputPaths(job, inputPaths.toArray(new Path[inputPaths.size()]));
@@ -134,17 +133,14 @@ public class NcdcSecondarySortJob extends AbstractJob {
      * Mapper.
      */
     public static class NcdcSecondarySortMapper
-            extends Mapper<LongWritable, Text, IntPairWritable, Text> {
-
-        private NcdcRecordParser parser = new NcdcRecordParser();
+            extends Mapper<LongWritable, NcdcRecordWritable, IntPairWritable, Text> {
 
         @Override
-        protected void map(LongWritable key, Text value,
+        protected void map(LongWritable key, NcdcRecordWritable value,
                            Context context) throws IOException, InterruptedException {
-            parser.parse(value);
-            if (parser.isValidTemperature()) {
-                context.write(new IntPairWritable(parser.getYearInt(), parser.getAirTemperature()),
-                        new Text(parser.getYearInt() + "\t" + parser.getAirTemperature()));
+            if (value.isValidTemperature()) {
+                context.write(new IntPairWritable(value.getYear(), value.getAirTemperature()),
+                        new Text(value.getYear() + "\t" + value.getAirTemperature()));
             }
         }
     }
@@ -14,7 +14,6 @@ import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
@@ -77,7 +76,7 @@ public class NcdcStationNameJob extends AbstractJob {
         job.setOutputValueClass(IntWritable.class);
         job.setMapperClass(NcdcStationNameMapper.class);
         job.setReducerClass(NcdcStationNameReducer.class);
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.addInputPath(job, inputPath);
@@ -89,9 +88,7 @@ public class NcdcStationNameJob extends AbstractJob {
     /**
      * Mapper.
      */
-    public static class NcdcStationNameMapper extends Mapper<LongWritable, Text, TextPairWritable, IntWritable> {
-        private NcdcRecordParser parser = new NcdcRecordParser();
-
+    public static class NcdcStationNameMapper extends Mapper<LongWritable, NcdcRecordWritable, TextPairWritable, IntWritable> {
         private int minTemperature = Integer.MIN_VALUE;
 
         @Override
@@ -102,15 +99,13 @@ public class NcdcStationNameJob extends AbstractJob {
         }
 
         @Override
-        protected void map(LongWritable key, Text value, Context context)
+        protected void map(LongWritable key, NcdcRecordWritable value, Context context)
                 throws IOException, InterruptedException {
-            parser.parse(value);
-
-            if (parser.isValidTemperature()) {
+            if (value.isValidTemperature()) {
                 // Apply threshold
-                if (parser.getAirTemperature() >= minTemperature) {
-                    context.write(new TextPairWritable(parser.getStationId(), parser.getYear()),
-                            new IntWritable(parser.getAirTemperature()));
+                if (value.getAirTemperature() >= minTemperature) {
+                    context.write(new TextPairWritable(value.getStationId(), String.valueOf(value.getYear())),
+                            new IntWritable(value.getAirTemperature()));
                 }
             }
         }
@@ -9,7 +9,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
@@ -75,7 +74,7 @@ public class NcdcTotalSortJob extends AbstractJob {
         job.setOutputValueClass(NullWritable.class);
         job.setMapperClass(NcdcTotalSortMapper.class);
         job.setReducerClass(NcdcTotalSortReducer.class);
-        job.setInputFormatClass(TextInputFormat.class);
+        job.setInputFormatClass(NcdcInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
 
         FileInputFormat.setInputPaths(job, inputPaths.toArray(new Path[inputPaths.size()]));
@@ -141,27 +140,23 @@ public class NcdcTotalSortJob extends AbstractJob {
     /**
      * Mapper.
      */
-    public static class NcdcTotalSortMapper extends Mapper<LongWritable, Text, LongWritable, Text> {
-
-        private NcdcRecordParser parser = new NcdcRecordParser();
+    public static class NcdcTotalSortMapper extends Mapper<LongWritable, NcdcRecordWritable, LongWritable, Text> {
 
         @Override
-        public void map(LongWritable key, Text value, Context context)
+        public void map(LongWritable key, NcdcRecordWritable value, Context context)
                 throws IOException, InterruptedException {
 
-            parser.parse(value);
-
-            if (parser.isValidTemperature()) {
-                String year = parser.getYear();
-                int airTemperature = parser.getAirTemperature();
+            if (value.isValidTemperature()) {
+                int year = value.getYear();
+                int airTemperature = value.getAirTemperature();
 
                 context.write(new LongWritable(airTemperature), new Text(year + "\t" + airTemperature));
             }
-            else if (parser.isMalformedTemperature()) {
+            else if (value.isMalformedTemperature()) {
                 System.err.println("Ignoring possibly corrupt input: " + value);
                 context.getCounter(Temperature.MALFORMED).increment(1);
             }
-            else if (parser.isMissingTemperature()) {
+            else if (value.isMissingTemperature()) {
                 context.getCounter(Temperature.MISSING).increment(1);
             }
         }
@@ -0,0 +1,141 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.DynamicBloomFilter;
+import org.apache.hadoop.util.bloom.Filter;
+import org.apache.hadoop.util.bloom.Key;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The Bloom filters of the key columns of one data file, written next to the data in a Bloom
+ * filter directory. The length and modification time of the file are kept to detect a sidecar
+ * which is out of date.
+ * <p/>
+ * A sidecar starts with its negated version, which a sidecar of the first version(a
+ * {@link DynamicBloomFilter} per column) lacks: it starts with the length of the path instead, and
+ * is still read.
+ *
+ * @author Younggue Bae
+ */
+public class BloomSidecarWritable implements Writable {
+
+	/** one {@link BloomFilter} per column, sized for the distinct values of the file */
+	public static final int VERSION = 2;
+
+	private int version = VERSION;
+	private String path;
+	private long length;
+	private long modificationTime;
+	private int[] columns = new int[0];
+	private Filter[] filters = new Filter[0];
+
+	public BloomSidecarWritable() {
+	}
+
+	public BloomSidecarWritable(FileStatus file, int[] columns, Filter[] filters) {
+		if (columns.length != filters.length) {
+			throw new IllegalArgumentException("A filter per column is required!");
+		}
+		this.path = file.getPath().toString();
+		this.length = file.getLen();
+		this.modificationTime = file.getModificationTime();
+		this.columns = columns;
+		this.filters = filters;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return true if the sidecar was written for the current version of the file.
+	 */
+	public boolean isCurrent(FileStatus file) {
+		return file.getPath().toString().equals(path) && file.getLen() == length
+				&& file.getModificationTime() == modificationTime;
+	}
+
+	/**
+	 * @return the filter of the column, or null if the column has no filter.
+	 */
+	public Filter getFilter(int column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == column) {
+				return filters[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return false if none of the keys can be in the column, true if one might be or if the
+	 * column has no filter.
+	 */
+	public boolean mightContain(int column, Key[] keys) {
+		Filter filter = getFilter(column);
+		if (filter == null) {
+			return true;
+		}
+		for (Key key : keys) {
+			if (filter.membershipTest(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, -VERSION);
+		Text.writeString(out, path);
+		out.writeLong(length);
+		out.writeLong(modificationTime);
+		WritableUtils.writeVInt(out, columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			WritableUtils.writeVInt(out, columns[i]);
+			filters[i].write(out);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int n = WritableUtils.readVInt(in);
+		if (n < 0) {
+			version = -n;
+			path = Text.readString(in);
+		}
+		else {
+			// the length of the path of the first version
+			version = 1;
+			byte[] bytes = new byte[n];
+			in.readFully(bytes);
+			path = Text.decode(bytes);
+		}
+		length = in.readLong();
+		modificationTime = in.readLong();
+		n = WritableUtils.readVInt(in);
+		columns = new int[n];
+		filters = new Filter[n];
+		for (int i = 0; i < n; i++) {
+			columns[i] = WritableUtils.readVInt(in);
+			filters[i] = version == 1 ? new DynamicBloomFilter() : new BloomFilter();
+			filters[i].readFields(in);
+		}
+	}
+
+}
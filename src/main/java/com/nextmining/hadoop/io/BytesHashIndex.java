@@ -0,0 +1,184 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash index of distinct byte strings, looked up with a byte slice, which
+ * numbers the strings 0, 1, 2, ... in the order they are added.
+ * <p/>
+ * The strings are copied into one growing byte arena and referenced by offset, so an index of
+ * millions of small strings costs a few arrays instead of millions of objects.
+ */
+public class BytesHashIndex {
+
+	private static final int INITIAL_ARENA_SIZE = 1 << 16;
+
+	private byte[] arena;
+	private int arenaSize;
+
+	/* the string of each slot, -1 if empty */
+	private int[] slots;
+
+	/* strings: offset, length and hash */
+	private int[] offsets;
+	private int[] lengths;
+	private int[] hashes;
+	private int size;
+
+	public BytesHashIndex() {
+		this(16);
+	}
+
+	public BytesHashIndex(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		arena = new byte[INITIAL_ARENA_SIZE];
+		slots = new int[capacity];
+		Arrays.fill(slots, -1);
+		offsets = new int[capacity / 2];
+		lengths = new int[capacity / 2];
+		hashes = new int[capacity / 2];
+	}
+
+	/**
+	 * Adds a copy of the given bytes, unless the index already holds them. Whether they were added
+	 * can be told by {@link #size()}.
+	 *
+	 * @return the number of the string.
+	 */
+	public int add(byte[] b, int s, int l) {
+		int hash = WritableComparator.hashBytes(b, s, l);
+		int slot = findSlot(b, s, l, hash);
+		if (slots[slot] >= 0) {
+			return slots[slot];
+		}
+		if (size == offsets.length) {
+			int capacity = size * 2;
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+		}
+		offsets[size] = append(b, s, l);
+		lengths[size] = l;
+		hashes[size] = hash;
+		slots[slot] = size;
+		if (++size * 2 > slots.length) {
+			rehash();
+		}
+		return size - 1;
+	}
+
+	/**
+	 * @return the number of the string, or -1 if the index does not hold it.
+	 */
+	public int find(byte[] b, int s, int l) {
+		return slots[findSlot(b, s, l, WritableComparator.hashBytes(b, s, l))];
+	}
+
+	/**
+	 * @return the array holding the strings at {@link #getOffset(int)}.
+	 */
+	public byte[] getArena() {
+		return arena;
+	}
+
+	/**
+	 * @return the bytes of the arena used by the strings.
+	 */
+	public int getArenaSize() {
+		return arenaSize;
+	}
+
+	public int getOffset(int i) {
+		return offsets[i];
+	}
+
+	public int getLength(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * Compares the bytes of two strings of the index.
+	 */
+	public int compare(int i, int j) {
+		return WritableComparator.compareBytes(arena, offsets[i], lengths[i], arena, offsets[j], lengths[j]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the estimated bytes of memory held.
+	 */
+	public long memorySize() {
+		return arena.length + 4L * (slots.length + 3 * offsets.length);
+	}
+
+	/**
+	 * Removes all strings, keeping the memory for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(slots, -1);
+		arenaSize = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return the slot holding the given bytes, or the empty slot where they would be inserted.
+	 */
+	private int findSlot(byte[] b, int s, int l, int hash) {
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] >= 0) {
+			int i = slots[slot];
+			if (hashes[i] == hash && WritableComparator.compareBytes(arena, offsets[i], lengths[i], b, s, l) == 0) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int append(byte[] b, int s, int l) {
+		if (arenaSize + l > arena.length) {
+			long capacity = Math.max((long) arena.length * 2, (long) arenaSize + l);
+			if (capacity > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("The strings are larger than 2GB");
+			}
+			arena = Arrays.copyOf(arena, (int) capacity);
+		}
+		System.arraycopy(b, s, arena, arenaSize, l);
+		int offset = arenaSize;
+		arenaSize += l;
+		return offset;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, -1);
+		int mask = slots.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = mix(hashes[i]) & mask;
+			while (slots[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i;
+		}
+	}
+
+	/**
+	 * Spreads the bits of a hash before it is masked to a slot. The polynomial hash of
+	 * {@link WritableComparator#hashBytes(byte[], int, int)} maps strings differing only in their
+	 * last byte to neighbouring values, which would cluster under linear probing.
+	 */
+	static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+}
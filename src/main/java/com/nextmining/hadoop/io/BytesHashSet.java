@@ -0,0 +1,66 @@
+package com.nextmining.hadoop.io;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * A hash set of byte strings whose membership test takes a byte slice, so that fields of a
+ * {@link DelimitedRecord} can be looked up without creating Strings.
+ *
+ * @see BytesHashIndex
+ */
+public class BytesHashSet {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final BytesHashIndex index;
+
+	public BytesHashSet() {
+		this(16);
+	}
+
+	public BytesHashSet(int expectedSize) {
+		index = new BytesHashIndex(expectedSize);
+	}
+
+	/**
+	 * Creates a set holding the UTF-8 bytes of the given strings.
+	 */
+	public BytesHashSet(Collection<String> strings) {
+		this(strings.size());
+		for (String str : strings) {
+			add(str.getBytes(UTF8));
+		}
+	}
+
+	/**
+	 * Adds a copy of the given bytes.
+	 *
+	 * @return true if the set did not already contain the bytes.
+	 */
+	public boolean add(byte[] b, int s, int l) {
+		int size = index.size();
+		index.add(b, s, l);
+		return index.size() > size;
+	}
+
+	public boolean add(byte[] b) {
+		return add(b, 0, b.length);
+	}
+
+	public boolean contains(byte[] b, int s, int l) {
+		return index.find(b, s, l) >= 0;
+	}
+
+	/**
+	 * @return true if the set contains field {@code i} of the record.
+	 */
+	public boolean contains(DelimitedRecord record, int i) {
+		return contains(record.getBytes(), record.getStart(i), record.getLength(i));
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.nextmining.hadoop.io;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash multimap from byte strings to distinct byte strings, e.g. from join keys
+ * to join values, looked up with a byte slice.
+ * <p/>
+ * The keys and the values are held in two {@link BytesHashIndex}es, so a value shared by many keys
+ * is stored once, and the values of a key are chained by index. A (key, value) pair is made
+ * distinct by a hash set of the numbers of its key and value, so adding a value costs the same
+ * however many values the key already has.
+ */
+public class BytesMultiMap {
+
+	private final BytesHashIndex keys = new BytesHashIndex();
+	private final BytesHashIndex values = new BytesHashIndex();
+
+	/* keys: first/last entry */
+	private int[] firstEntries = new int[16];
+	private int[] lastEntries = new int[16];
+
+	/* entries: value and next entry of the same key(-1 at the end) */
+	private int[] entryValues = new int[16];
+	private int[] nextEntries = new int[16];
+	private int numEntries;
+
+	/* the (key, value) pair of each entry, key << 32 | value, -1 if empty */
+	private long[] pairs;
+
+	public BytesMultiMap() {
+		pairs = new long[32];
+		Arrays.fill(pairs, -1);
+	}
+
+	/**
+	 * Adds copies of the key and the value, unless the key already has an equal value.
+	 *
+	 * @return true if the value was added.
+	 */
+	public boolean put(byte[] kb, int ks, int kl, byte[] vb, int vs, int vl) {
+		int numKeys = keys.size();
+		int key = keys.add(kb, ks, kl);
+		if (key == numKeys) {
+			addKey();
+		}
+		int value = values.add(vb, vs, vl);
+
+		long pair = (long) key << 32 | value;
+		int slot = findPair(pair);
+		if (pairs[slot] >= 0) {
+			return false;
+		}
+		pairs[slot] = pair;
+		addEntry(key, value);
+		if (numEntries * 2 > pairs.length) {
+			rehash();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the first value of the key, or -1 if the map does not contain the key.
+	 * @see #nextValue(int)
+	 */
+	public int getFirstValue(byte[] b, int s, int l) {
+		int key = keys.find(b, s, l);
+		return key < 0 ? -1 : firstEntries[key];
+	}
+
+	/**
+	 * @return the value after the given one of the same key, or -1.
+	 */
+	public int nextValue(int value) {
+		return nextEntries[value];
+	}
+
+	/**
+	 * @return the array holding the values at {@link #getValueOffset(int)}.
+	 */
+	public byte[] getArena() {
+		return values.getArena();
+	}
+
+	public int getValueOffset(int value) {
+		return values.getOffset(entryValues[value]);
+	}
+
+	public int getValueLength(int value) {
+		return values.getLength(entryValues[value]);
+	}
+
+	public int numKeys() {
+		return keys.size();
+	}
+
+	/**
+	 * @return the number of (key, value) pairs.
+	 */
+	public int numValues() {
+		return numEntries;
+	}
+
+	/**
+	 * @return the estimated bytes of memory held.
+	 */
+	public long memorySize() {
+		return keys.memorySize() + values.memorySize()
+				+ 4L * (2 * firstEntries.length + 2 * entryValues.length) + 8L * pairs.length;
+	}
+
+	private void addKey() {
+		int key = keys.size() - 1;
+		if (key == firstEntries.length) {
+			int capacity = key * 2;
+			firstEntries = Arrays.copyOf(firstEntries, capacity);
+			lastEntries = Arrays.copyOf(lastEntries, capacity);
+		}
+		firstEntries[key] = -1;
+		lastEntries[key] = -1;
+	}
+
+	private void addEntry(int key, int value) {
+		if (numEntries == entryValues.length) {
+			int capacity = numEntries * 2;
+			entryValues = Arrays.copyOf(entryValues, capacity);
+			nextEntries = Arrays.copyOf(nextEntries, capacity);
+		}
+		entryValues[numEntries] = value;
+		nextEntries[numEntries] = -1;
+		if (lastEntries[key] < 0) {
+			firstEntries[key] = numEntries;
+		}
+		else {
+			nextEntries[lastEntries[key]] = numEntries;
+		}
+		lastEntries[key] = numEntries;
+		numEntries++;
+	}
+
+	/**
+	 * @return the slot holding the pair, or the empty slot where it would be inserted.
+	 */
+	private int findPair(long pair) {
+		int mask = pairs.length - 1;
+		int slot = hashPair(pair) & mask;
+		while (pairs[slot] >= 0) {
+			if (pairs[slot] == pair) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+		long[] oldPairs = pairs;
+		pairs = new long[oldPairs.length * 2];
+		Arrays.fill(pairs, -1);
+		int mask = pairs.length - 1;
+		for (long pair : oldPairs) {
+			if (pair >= 0) {
+				int slot = hashPair(pair) & mask;
+				while (pairs[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				pairs[slot] = pair;
+			}
+		}
+	}
+
+	private static int hashPair(long pair) {
+		return BytesHashIndex.mix((int) (pair >>> 32) * 31 + (int) pair);
+	}
+
+}
@@ -0,0 +1,376 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+
+/**
+ * A reusable view over a delimited record which indexes the field offsets directly in the
+ * underlying UTF-8 byte array (e.g. {@link Text#getBytes()}).
+ * <p/>
+ * Unlike {@code value.toString().split(delimiter)} this neither decodes the record nor allocates
+ * per field, and the delimiter is matched literally rather than as a regular expression. Fields
+ * can be compared, hashed, parsed as numbers and copied out as byte slices. Empty trailing fields
+ * are kept, so {@code "a\tb\t"} has three fields.
+ * <p/>
+ * The view is only valid until the underlying bytes are modified, which for a mapper's input value
+ * means until the next call to {@code map()}.
+ */
+public class DelimitedRecord {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** powers of ten which are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final byte[] delimiter;
+	private byte[] bytes;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int size;
+	private final byte[] vint = new byte[5];
+
+	public DelimitedRecord(String delimiter) {
+		if (delimiter == null || delimiter.isEmpty()) {
+			throw new IllegalArgumentException("Delimiter must not be empty!");
+		}
+		this.delimiter = delimiter.getBytes(UTF8);
+	}
+
+	public void set(Text text) {
+		set(text.getBytes(), 0, text.getLength());
+	}
+
+	/**
+	 * Indexes the fields of the record held in {@code bytes[offset, offset + length)}.
+	 */
+	public void set(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.size = 0;
+
+		int end = offset + length;
+		int fieldStart = offset;
+		if (delimiter.length == 1) {
+			byte d = delimiter[0];
+			for (int i = offset; i < end; i++) {
+				if (bytes[i] == d) {
+					addField(fieldStart, i);
+					fieldStart = i + 1;
+				}
+			}
+		}
+		else {
+			int last = end - delimiter.length;
+			int i = offset;
+			while (i <= last) {
+				if (matchesDelimiter(bytes, i)) {
+					addField(fieldStart, i);
+					i += delimiter.length;
+					fieldStart = i;
+				}
+				else {
+					i++;
+				}
+			}
+		}
+		addField(fieldStart, end);
+	}
+
+	private boolean matchesDelimiter(byte[] b, int pos) {
+		for (int j = 0; j < delimiter.length; j++) {
+			if (b[pos + j] != delimiter[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addField(int start, int end) {
+		if (size == starts.length) {
+			int[] newStarts = new int[size * 2];
+			int[] newEnds = new int[size * 2];
+			System.arraycopy(starts, 0, newStarts, 0, size);
+			System.arraycopy(ends, 0, newEnds, 0, size);
+			starts = newStarts;
+			ends = newEnds;
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Field index " + i + " out of range, the record has " + size + " fields");
+		}
+	}
+
+	/**
+	 * @return the number of fields in the record.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the underlying byte array; field offsets index into this array.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getStart(int i) {
+		checkIndex(i);
+		return starts[i];
+	}
+
+	public int getEnd(int i) {
+		checkIndex(i);
+		return ends[i];
+	}
+
+	public int getLength(int i) {
+		checkIndex(i);
+		return ends[i] - starts[i];
+	}
+
+	/**
+	 * @return the start offset of the field with leading whitespace (as in {@link String#trim()}) skipped.
+	 */
+	public int getTrimmedStart(int i) {
+		checkIndex(i);
+		int start = starts[i];
+		int end = ends[i];
+		while (start < end && (bytes[start] & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * @return the end offset of the field with trailing whitespace (as in {@link String#trim()}) skipped.
+	 */
+	public int getTrimmedEnd(int i) {
+		checkIndex(i);
+		int start = starts[i];
+		int end = ends[i];
+		while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * @return true if the field is byte-wise equal to the given value.
+	 */
+	public boolean equals(int i, byte[] value) {
+		return compare(i, value, 0, value.length) == 0;
+	}
+
+	/**
+	 * Compares the field with the given bytes in unsigned lexicographic order, which is the order of
+	 * {@link Text} and of the code points of UTF-8 encoded strings.
+	 */
+	public int compare(int i, byte[] b, int s, int l) {
+		checkIndex(i);
+		return WritableComparator.compareBytes(bytes, starts[i], ends[i] - starts[i], b, s, l);
+	}
+
+	/**
+	 * @return the hash code of the field bytes, consistent with {@link WritableComparator#hashBytes(byte[], int, int)}.
+	 */
+	public int hashCode(int i) {
+		checkIndex(i);
+		return WritableComparator.hashBytes(bytes, starts[i], ends[i] - starts[i]);
+	}
+
+	/**
+	 * Parses the field as a decimal long, ignoring surrounding whitespace.
+	 *
+	 * @throws NumberFormatException if the field is not a valid long.
+	 */
+	public long getLong(int i) {
+		int start = getTrimmedStart(i);
+		int end = getTrimmedEnd(i);
+
+		boolean negative = false;
+		if (start < end && (bytes[start] == '-' || bytes[start] == '+')) {
+			negative = bytes[start] == '-';
+			start++;
+		}
+		if (start == end) {
+			throw new NumberFormatException("For input string: \"" + getString(i) + "\"");
+		}
+
+		// accumulate negatively to cover Long.MIN_VALUE
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long multmin = limit / 10;
+		long result = 0;
+		for (int p = start; p < end; p++) {
+			int digit = bytes[p] - '0';
+			if (digit < 0 || digit > 9 || result < multmin || result * 10 < limit + digit) {
+				throw new NumberFormatException("For input string: \"" + getString(i) + "\"");
+			}
+			result = result * 10 - digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parses the field as a double, ignoring surrounding whitespace. Plain decimals such as
+	 * {@code -12.5} are parsed directly from the bytes; other forms (exponents, NaN, very long
+	 * mantissas) fall back to {@link Double#parseDouble(String)}.
+	 *
+	 * @throws NumberFormatException if the field is not a valid double.
+	 */
+	public double getDouble(int i) {
+		int start = getTrimmedStart(i);
+		int end = getTrimmedEnd(i);
+
+		int p = start;
+		boolean negative = false;
+		if (p < end && (bytes[p] == '-' || bytes[p] == '+')) {
+			negative = bytes[p] == '-';
+			p++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; p < end; p++) {
+			byte b = bytes[p];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+				if (++digits > 15) {
+					break;
+				}
+			}
+			else if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			}
+			else {
+				break;
+			}
+		}
+
+		if (p < end || digits == 0) {
+			// not a plain decimal, or too many digits to be converted exactly
+			return Double.parseDouble(getString(i));
+		}
+
+		double value = mantissa;
+		if (fractionDigits > 0) {
+			value /= POWERS_OF_TEN[fractionDigits];
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes the field into a String. This allocates and is meant for the few places which really
+	 * need a String (e.g. error messages).
+	 */
+	public String getString(int i) {
+		checkIndex(i);
+		try {
+			return Text.decode(bytes, starts[i], ends[i] - starts[i]);
+		} catch (CharacterCodingException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Replaces the contents of {@code out} with the field bytes.
+	 */
+	public void copyTo(int i, Text out) {
+		checkIndex(i);
+		out.set(bytes, starts[i], ends[i] - starts[i]);
+	}
+
+	/**
+	 * Appends the field bytes to {@code out}.
+	 */
+	public void appendTo(int i, Text out) {
+		checkIndex(i);
+		out.append(bytes, starts[i], ends[i] - starts[i]);
+	}
+
+	/**
+	 * Replaces the contents of {@code out} with the given fields joined by {@code separator}.
+	 */
+	public void copyTo(int[] columns, byte[] separator, Text out) {
+		out.clear();
+		for (int c = 0; c < columns.length; c++) {
+			if (c > 0) {
+				out.append(separator, 0, separator.length);
+			}
+			appendTo(columns[c], out);
+		}
+	}
+
+	/**
+	 * Replaces the contents of {@code out} with the given fields, each prefixed by its length as a
+	 * vint(see {@link org.apache.hadoop.io.WritableUtils#writeVInt}), so the fields stay apart
+	 * without a separator.
+	 */
+	public void encodeTo(int[] columns, Text out) {
+		out.clear();
+		for (int c = 0; c < columns.length; c++) {
+			checkIndex(columns[c]);
+			int length = ends[columns[c]] - starts[columns[c]];
+			out.append(vint, 0, encodeVInt(length));
+			out.append(bytes, starts[columns[c]], length);
+		}
+	}
+
+	/**
+	 * Encodes the non-negative number into {@code vint} like {@code WritableUtils.writeVInt}.
+	 *
+	 * @return the number of bytes.
+	 */
+	private int encodeVInt(int n) {
+		if (n <= 127) {
+			vint[0] = (byte) n;
+			return 1;
+		}
+		int size = 0;
+		for (int tmp = n; tmp != 0; tmp >>>= 8) {
+			size++;
+		}
+		vint[0] = (byte) (-112 - size);
+		for (int i = 1; i <= size; i++) {
+			vint[i] = (byte) (n >>> ((size - i) * 8));
+		}
+		return size + 1;
+	}
+
+	/**
+	 * Writes the raw field bytes to {@code out}.
+	 */
+	public void write(int i, DataOutput out) throws IOException {
+		checkIndex(i);
+		out.write(bytes, starts[i], ends[i] - starts[i]);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(getString(i));
+		}
+		return sb.append("]").toString();
+	}
+
+}
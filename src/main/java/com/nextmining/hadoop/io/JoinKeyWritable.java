@@ -0,0 +1,178 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A join key: the key columns of a record, each prefixed by its vint length(see
+ * {@link DelimitedRecord#encodeTo(int[], Text)}), and the one byte tag of its input.
+ * <p/>
+ * It is serialized as the key bytes, like a {@link Text}, followed by the tag byte, so that
+ * {@link Comparator} sorts it by the key bytes then the tag and {@link KeyComparator} groups it by
+ * the key bytes alone, both without deserializing.
+ *
+ * @author Younggue Bae
+ */
+public class JoinKeyWritable implements WritableComparable<JoinKeyWritable> {
+
+	private final Text key;
+	private byte tag;
+
+	public JoinKeyWritable() {
+		this(new Text());
+	}
+
+	public JoinKeyWritable(Text key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return the encoded key columns, without the tag.
+	 */
+	public Text getKey() {
+		return key;
+	}
+
+	public byte getTag() {
+		return tag;
+	}
+
+	public void setTag(byte tag) {
+		this.tag = tag;
+	}
+
+	public void set(JoinKeyWritable other) {
+		key.set(other.key);
+		tag = other.tag;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		key.write(out);
+		out.writeByte(tag);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		key.readFields(in);
+		tag = in.readByte();
+	}
+
+	/**
+	 * @return the hash code of the key bytes, the same for every tag so that the inputs of a key
+	 * meet in one partition.
+	 */
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof JoinKeyWritable) {
+			JoinKeyWritable jk = (JoinKeyWritable) o;
+			return key.equals(jk.key) && tag == jk.tag;
+		}
+		return false;
+	}
+
+	@Override
+	public int compareTo(JoinKeyWritable jk) {
+		int cmp = key.compareTo(jk.key);
+		if (cmp != 0) {
+			return cmp;
+		}
+		return (tag & 0xff) - (jk.tag & 0xff);
+	}
+
+	/**
+	 * @return the key columns joined by a tab, and the tag.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		byte[] b = key.getBytes();
+		try {
+			for (int i = 0; i < key.getLength(); ) {
+				int length = WritableComparator.readVInt(b, i);
+				sb.append(i > 0 ? "\t" : "");
+				i += WritableUtils.decodeVIntSize(b[i]);
+				sb.append(Text.decode(b, i, length));
+				i += length;
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return sb.append("/").append(tag & 0xff).toString();
+	}
+
+	/**
+	 * @return the length of the serialized key bytes, with their vint length.
+	 */
+	private static int keyLength(byte[] b, int s) throws IOException {
+		return WritableUtils.decodeVIntSize(b[s]) + WritableComparator.readVInt(b, s);
+	}
+
+	/** A RawComparator for comparing the key bytes, then the tag */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(JoinKeyWritable.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+				int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+				int cmp = compareBytes(b1, s1 + n1, keyLength(b1, s1) - n1, b2, s2 + n2, keyLength(b2, s2) - n2);
+				if (cmp != 0) {
+					return cmp;
+				}
+				return (b1[s1 + l1 - 1] & 0xff) - (b2[s2 + l2 - 1] & 0xff);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+	}
+
+	static {
+		WritableComparator.define(JoinKeyWritable.class, new Comparator());
+	}
+
+	/**
+	 * A RawComparator for grouping by the key bytes, ignoring the tag.
+	 */
+	public static class KeyComparator extends WritableComparator {
+
+		public KeyComparator() {
+			super(JoinKeyWritable.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+				int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+				return compareBytes(b1, s1 + n1, keyLength(b1, s1) - n1, b2, s2 + n2, keyLength(b2, s2) - n2);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public int compare(WritableComparable a, WritableComparable b) {
+			if (a instanceof JoinKeyWritable && b instanceof JoinKeyWritable) {
+				return ((JoinKeyWritable) a).key.compareTo(((JoinKeyWritable) b).key);
+			}
+			return super.compare(a, b);
+		}
+	}
+}
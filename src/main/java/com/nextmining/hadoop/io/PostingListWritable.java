@@ -0,0 +1,184 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link Writable} list of postings, i.e. (file id, byte offset) pairs locating the records
+ * which contain a term.
+ * <p/>
+ * The postings are written sorted by file id and offset, delta encoded as variable-length
+ * integers: the gap to the previous file id, then the offset, which is also a gap if the file
+ * is the same as the previous one. Dense postings thus take a few bytes each.
+ *
+ * @author Younggue Bae
+ */
+public class PostingListWritable implements Writable {
+
+	private int[] fileIds = new int[8];
+	private long[] offsets = new long[8];
+	private int size;
+	private boolean sorted = true;
+
+	public PostingListWritable() {
+	}
+
+	public PostingListWritable(int fileId, long offset) {
+		add(fileId, offset);
+	}
+
+	public void clear() {
+		size = 0;
+		sorted = true;
+	}
+
+	public void add(int fileId, long offset) {
+		if (fileId < 0 || offset < 0) {
+			throw new IllegalArgumentException("Invalid posting: (" + fileId + ", " + offset + ")");
+		}
+		if (size == fileIds.length) {
+			fileIds = Arrays.copyOf(fileIds, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+		}
+		if (size > 0 && compare(fileId, offset, size - 1) < 0) {
+			sorted = false;
+		}
+		fileIds[size] = fileId;
+		offsets[size] = offset;
+		size++;
+	}
+
+	public void addAll(PostingListWritable other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.fileIds[i], other.offsets[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getFileId(int i) {
+		checkIndex(i);
+		return fileIds[i];
+	}
+
+	public long getOffset(int i) {
+		checkIndex(i);
+		return offsets[i];
+	}
+
+	/**
+	 * Sorts the postings by file id and offset and removes the duplicates.
+	 */
+	public void sort() {
+		if (!sorted) {
+			int[] tmpFileIds = new int[size];
+			long[] tmpOffsets = new long[size];
+			mergeSort(tmpFileIds, tmpOffsets, 0, size);
+			sorted = true;
+		}
+
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (n == 0 || compare(fileIds[i], offsets[i], n - 1) != 0) {
+				fileIds[n] = fileIds[i];
+				offsets[n] = offsets[i];
+				n++;
+			}
+		}
+		size = n;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		sort();
+		WritableUtils.writeVInt(out, size);
+		int prevFileId = 0;
+		long prevOffset = 0;
+		for (int i = 0; i < size; i++) {
+			int fileId = fileIds[i];
+			WritableUtils.writeVInt(out, fileId - prevFileId);
+			WritableUtils.writeVLong(out, fileId == prevFileId ? offsets[i] - prevOffset : offsets[i]);
+			prevFileId = fileId;
+			prevOffset = offsets[i];
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		int n = WritableUtils.readVInt(in);
+		if (n > fileIds.length) {
+			fileIds = new int[n];
+			offsets = new long[n];
+		}
+		int fileId = 0;
+		long offset = 0;
+		for (int i = 0; i < n; i++) {
+			int fileDelta = WritableUtils.readVInt(in);
+			long offsetDelta = WritableUtils.readVLong(in);
+			fileId += fileDelta;
+			offset = fileDelta == 0 ? offset + offsetDelta : offsetDelta;
+			fileIds[i] = fileId;
+			offsets[i] = offset;
+		}
+		size = n;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(fileIds[i]).append(':').append(offsets[i]);
+		}
+		return sb.append(']').toString();
+	}
+
+	private int compare(int fileId, long offset, int i) {
+		if (fileId != fileIds[i]) {
+			return fileId < fileIds[i] ? -1 : 1;
+		}
+		return offset < offsets[i] ? -1 : (offset == offsets[i] ? 0 : 1);
+	}
+
+	/* sorts [from, to) of the postings, using the tmp arrays as merge buffers */
+	private void mergeSort(int[] tmpFileIds, long[] tmpOffsets, int from, int to) {
+		if (to - from <= 1) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(tmpFileIds, tmpOffsets, from, mid);
+		mergeSort(tmpFileIds, tmpOffsets, mid, to);
+		if (compare(fileIds[mid], offsets[mid], mid - 1) >= 0) {
+			return;
+		}
+
+		System.arraycopy(fileIds, from, tmpFileIds, from, to - from);
+		System.arraycopy(offsets, from, tmpOffsets, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++) {
+			boolean takeLeft = right >= to || (left < mid && (tmpFileIds[left] < tmpFileIds[right]
+					|| (tmpFileIds[left] == tmpFileIds[right] && tmpOffsets[left] <= tmpOffsets[right])));
+			int j = takeLeft ? left++ : right++;
+			fileIds[i] = tmpFileIds[j];
+			offsets[i] = tmpOffsets[j];
+		}
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Posting " + i + " of " + size);
+		}
+	}
+
+}
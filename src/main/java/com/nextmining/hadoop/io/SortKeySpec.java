@@ -0,0 +1,126 @@
+package com.nextmining.hadoop.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The columns of a composite sort key, each with a datatype and a direction, e.g.
+ * {@code 3:numeric:desc,0:string:asc}. The datatype defaults to numeric and the direction to
+ * ascending, so {@code 3} alone is the ascending numeric column 3.
+ * <p/>
+ * The columns of a record are appended in order to one {@link SortKeyWritable}, so that the
+ * composite key sorts by the first column, then the second and so on as raw bytes.
+ *
+ * @author Younggue Bae
+ */
+public class SortKeySpec {
+
+	private final int[] columns;
+	private final SortKeyWritable.Type[] types;
+	private final boolean[] descending;
+
+	private SortKeySpec(List<Integer> columns, List<SortKeyWritable.Type> types, List<Boolean> descending) {
+		this.columns = new int[columns.size()];
+		this.types = types.toArray(new SortKeyWritable.Type[types.size()]);
+		this.descending = new boolean[descending.size()];
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i] = columns.get(i);
+			this.descending[i] = descending.get(i);
+		}
+	}
+
+	/**
+	 * Parses a spec of comma separated {@code column[:datatype[:asc|desc]]}.
+	 *
+	 * @throws IllegalArgumentException if the spec is invalid.
+	 */
+	public static SortKeySpec parse(String spec) {
+		List<Integer> columns = new ArrayList<Integer>();
+		List<SortKeyWritable.Type> types = new ArrayList<SortKeyWritable.Type>();
+		List<Boolean> descending = new ArrayList<Boolean>();
+
+		for (String column : spec.split(",")) {
+			String[] parts = column.trim().split(":");
+			if (parts.length > 3 || parts[0].isEmpty()) {
+				throw new IllegalArgumentException("Invalid sort column(column:datatype:direction): " + column);
+			}
+			try {
+				columns.add(Integer.parseInt(parts[0].trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid sort column index: " + column);
+			}
+			types.add(SortKeyWritable.Type.of(parts.length > 1 ? parts[1].trim() : "numeric"));
+			descending.add(parts.length > 2 && isDescending(parts[2].trim()));
+		}
+		return new SortKeySpec(columns, types, descending);
+	}
+
+	/**
+	 * @return the spec of a single column.
+	 */
+	public static SortKeySpec of(int column, String datatype, String sortOption) {
+		List<Integer> columns = new ArrayList<Integer>();
+		columns.add(column);
+		List<SortKeyWritable.Type> types = new ArrayList<SortKeyWritable.Type>();
+		types.add(SortKeyWritable.Type.of(datatype));
+		List<Boolean> descending = new ArrayList<Boolean>();
+		descending.add(isDescending(sortOption));
+		return new SortKeySpec(columns, types, descending);
+	}
+
+	private static boolean isDescending(String direction) {
+		String option = direction.toLowerCase();
+		if (option.startsWith("desc")) {
+			return true;
+		}
+		if (option.startsWith("asc")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Unknown sort direction: " + direction);
+	}
+
+	public int size() {
+		return columns.length;
+	}
+
+	public int getColumn(int i) {
+		return columns[i];
+	}
+
+	public SortKeyWritable.Type getType(int i) {
+		return types[i];
+	}
+
+	public boolean isDescending(int i) {
+		return descending[i];
+	}
+
+	/**
+	 * Sets the key to the sort columns of the record.
+	 *
+	 * @throws NumberFormatException if a numeric column can not be parsed.
+	 */
+	public void build(DelimitedRecord record, SortKeyWritable key) {
+		key.clear();
+		for (int i = 0; i < columns.length; i++) {
+			key.append(types[i], record, columns[i], descending[i]);
+		}
+	}
+
+	/**
+	 * @return the spec in the form accepted by {@link #parse(String)}.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(columns[i]).append(':').append(types[i].name().toLowerCase()).append(':')
+					.append(descending[i] ? "desc" : "asc");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A sort key held as order-preserving(memcomparable) bytes: comparing the bytes of two keys
+ * lexicographically(unsigned) gives the order of the typed values they encode, so the framework
+ * sorts and merges keys with the registered {@link Comparator} without deserializing them.
+ * <p/>
+ * One or more values are appended to a key:
+ * <ul>
+ *   <li>long: 8 bytes big endian with the sign bit flipped,</li>
+ *   <li>double: the 8 bytes of the IEEE 754 bits, with all bits flipped for negative values and
+ *   the sign bit flipped otherwise,</li>
+ *   <li>string: the bytes with 0x00 escaped as 0x00 0xFF, terminated by 0x00 0x01, so that a
+ *   prefix sorts first and the next appended value does not bleed into the comparison.</li>
+ * </ul>
+ * A value appended in descending order has all of its bytes inverted. The direction is therefore
+ * part of the bytes and is decided by whoever builds the key, e.g. from the job configuration.
+ *
+ * @author Younggue Bae
+ */
+public class SortKeyWritable extends BinaryComparable implements WritableComparable<BinaryComparable> {
+
+	/** datatypes of the values of a key */
+	public enum Type {
+		STRING, NUMERIC, LONG;
+
+		public static Type of(String type) {
+			try {
+				return valueOf(type.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown sort datatype: " + type);
+			}
+		}
+	}
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private byte[] bytes = EMPTY;
+	private int length;
+
+	public SortKeyWritable() {
+	}
+
+	public void clear() {
+		length = 0;
+	}
+
+	public void set(SortKeyWritable other) {
+		clear();
+		ensureCapacity(other.length);
+		System.arraycopy(other.bytes, 0, bytes, 0, other.length);
+		length = other.length;
+	}
+
+	public void appendLong(long value, boolean descending) {
+		appendFixed(value ^ Long.MIN_VALUE, descending);
+	}
+
+	public void appendDouble(double value, boolean descending) {
+		long bits = Double.doubleToLongBits(value);
+		appendFixed(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE, descending);
+	}
+
+	public void appendString(byte[] b, int start, int len, boolean descending) {
+		ensureCapacity(length + len * 2 + 2);
+		int mask = descending ? 0xff : 0;
+		for (int i = start; i < start + len; i++) {
+			bytes[length++] = (byte) (b[i] ^ mask);
+			if (b[i] == 0) {
+				bytes[length++] = (byte) (0xff ^ mask);
+			}
+		}
+		bytes[length++] = (byte) mask;
+		bytes[length++] = (byte) (0x01 ^ mask);
+	}
+
+	/**
+	 * Appends the column of the record as the given datatype.
+	 *
+	 * @throws NumberFormatException if a numeric column can not be parsed.
+	 */
+	public void append(Type type, DelimitedRecord record, int column, boolean descending) {
+		switch (type) {
+			case NUMERIC:
+				appendDouble(record.getDouble(column), descending);
+				break;
+			case LONG:
+				appendLong(record.getLong(column), descending);
+				break;
+			default:
+				int start = record.getStart(column);
+				appendString(record.getBytes(), start, record.getEnd(column) - start, descending);
+				break;
+		}
+	}
+
+	private void appendFixed(long value, boolean descending) {
+		if (descending) {
+			value = ~value;
+		}
+		ensureCapacity(length + 8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			bytes[length++] = (byte) (value >>> shift);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+		}
+	}
+
+	@Override
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, length);
+		out.write(bytes, 0, length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		length = 0;
+		int len = WritableUtils.readVInt(in);
+		ensureCapacity(len);
+		in.readFully(bytes, 0, len);
+		length = len;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/** A RawComparator comparing the serialized keys byte-wise */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(SortKeyWritable.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+			int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+			return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+		}
+	}
+
+	static {
+		WritableComparator.define(SortKeyWritable.class, new Comparator());
+	}
+
+}
@@ -6,6 +6,13 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+/**
+ * A sort key holding a string or numeric value.
+ * 
+ * @deprecated Writes the datatype with every key and parses the values on every comparison; use
+ * {@link SortKeyWritable}, which is compared as raw bytes.
+ */
+@Deprecated
 public class Sortable implements WritableComparable<Sortable> {
   
 	public static final String ASC = "ascending";
@@ -159,7 +159,7 @@ public abstract class AbstractJob extends Configured implements Tool {
 	 * @return if the requested option has been specified
 	 */
 	public boolean hasOption(String optionName) {
-		return options.hasOption(optionName);
+		return cmd.hasOption(optionName);
 	}
 	
 	@Override
@@ -0,0 +1,169 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BloomSidecarWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.bloom.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link TextInputFormat} which drops the splits of files whose Bloom filter sidecars(written by
+ * {@link BloomIndexJob}) show that the file can not contain a required value.
+ * <p/>
+ * A required value constrains a column to one of a set of values; a split is dropped if, for any
+ * constrained column, the filter of the file contains none of the values. Files without a sidecar,
+ * with an out of date sidecar or without a filter for the column are always read. The filters hold
+ * trimmed values, so the required values are trimmed as well.
+ *
+ * @author Younggue Bae
+ */
+public class BloomFilterSkippingInputFormat extends TextInputFormat {
+
+	private static final Logger logger = LoggerFactory.getLogger(BloomFilterSkippingInputFormat.class);
+
+	/** the most values a column may be required to have, more are not worth shipping in the conf */
+	public static final int MAX_REQUIRED_VALUES = 10000;
+
+	/* conf keys */
+	static final String BLOOM_DIR = "bloom.skip.dir";
+	static final String COLUMNS = "bloom.skip.columns";
+	static final String VALUES_PREFIX = "bloom.skip.values.";
+	static final String SKIP_PATHS = "bloom.skip.paths";
+
+	/**
+	 * Sets the input format of the job and the Bloom filter directory to consult.
+	 */
+	public static void setBloomDir(Job job, Path bloomDir) {
+		job.setInputFormatClass(BloomFilterSkippingInputFormat.class);
+		job.getConfiguration().set(BLOOM_DIR, bloomDir.toString());
+	}
+
+	/**
+	 * Requires the column to have one of the values. An empty value is not looked up, so the
+	 * requirement is ignored if one of the values is empty.
+	 */
+	public static void addRequiredValues(Job job, int column, Collection<String> values) {
+		for (String value : values) {
+			if (value.trim().isEmpty()) {
+				return;
+			}
+		}
+		
+		Configuration conf = job.getConfiguration();
+		String[] columns = conf.getStrings(COLUMNS, new String[0]);
+		String[] newColumns = new String[columns.length + 1];
+		System.arraycopy(columns, 0, newColumns, 0, columns.length);
+		newColumns[columns.length] = String.valueOf(column);
+		conf.setStrings(COLUMNS, newColumns);
+
+		String[] escaped = new String[values.size()];
+		int i = 0;
+		for (String value : values) {
+			escaped[i++] = StringUtils.escapeString(value.trim());
+		}
+		conf.set(VALUES_PREFIX + (newColumns.length - 1), StringUtils.arrayToString(escaped));
+	}
+
+	/**
+	 * Restricts the skipping to the files under the given paths, e.g. to one side of a join.
+	 */
+	public static void setSkipPaths(Job job, Path... paths) throws IOException {
+		String[] qualified = new String[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			FileSystem fs = paths[i].getFileSystem(job.getConfiguration());
+			qualified[i] = StringUtils.escapeString(fs.makeQualified(paths[i]).toString());
+		}
+		job.getConfiguration().set(SKIP_PATHS, StringUtils.arrayToString(qualified));
+	}
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		List<InputSplit> splits = super.getSplits(job);
+
+		Configuration conf = job.getConfiguration();
+		String[] columns = conf.getStrings(COLUMNS);
+		if (conf.get(BLOOM_DIR) == null || columns == null) {
+			return splits;
+		}
+		Path bloomDir = new Path(conf.get(BLOOM_DIR));
+
+		int[] constrainedColumns = new int[columns.length];
+		Key[][] keys = new Key[columns.length][];
+		for (int i = 0; i < columns.length; i++) {
+			constrainedColumns[i] = Integer.parseInt(columns[i]);
+			String[] values = StringUtils.split(conf.get(VALUES_PREFIX + i, ""));
+			keys[i] = new Key[values.length];
+			for (int j = 0; j < values.length; j++) {
+				keys[i][j] = new Key(StringUtils.unEscapeString(values[j]).getBytes("utf-8"));
+			}
+		}
+		String[] skipPaths = conf.get(SKIP_PATHS) == null ? null : StringUtils.split(conf.get(SKIP_PATHS));
+
+		// whether each file might contain the values, a file usually has several splits
+		Map<Path, Boolean> readFile = new HashMap<Path, Boolean>();
+		List<InputSplit> result = new ArrayList<InputSplit>(splits.size());
+		for (InputSplit split : splits) {
+			Path file = ((FileSplit) split).getPath();
+			Boolean read = readFile.get(file);
+			if (read == null) {
+				read = !isSkippable(file, skipPaths) || mightContain(bloomDir, file, constrainedColumns, keys, conf);
+				readFile.put(file, read);
+			}
+			if (read) {
+				result.add(split);
+			}
+		}
+
+		logger.info("Bloom filters skipped " + (splits.size() - result.size()) + " of " + splits.size() + " splits");
+		return result;
+	}
+
+	private static boolean isSkippable(Path file, String[] skipPaths) {
+		if (skipPaths == null) {
+			return true;
+		}
+		String path = file.toString();
+		for (String skipPath : skipPaths) {
+			String prefix = StringUtils.unEscapeString(skipPath);
+			if (path.equals(prefix) || path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean mightContain(Path bloomDir, Path file, int[] columns, Key[][] keys, Configuration conf) throws IOException {
+		BloomSidecarWritable sidecar = BloomIndexJob.readSidecar(bloomDir, file, conf);
+		if (sidecar == null) {
+			return true;
+		}
+		FileStatus status = file.getFileSystem(conf).getFileStatus(file);
+		if (!sidecar.isCurrent(status)) {
+			logger.warn("Bloom filter sidecar is out of date: " + file);
+			return true;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			if (!sidecar.mightContain(columns[i], keys[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,271 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BloomSidecarWritable;
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.util.BloomFilterUtil;
+import com.nextmining.hadoop.util.HadoopUtil;
+import com.nextmining.hadoop.util.HyperLogLog;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.hadoop.util.bloom.BloomFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class is a driver to write a Bloom filter sidecar per input file over the given key
+ * columns(see {@link BloomSidecarWritable}), which {@link BloomFilterSkippingInputFormat} uses to
+ * skip the splits of files which can not contain a looked up value.
+ * <p/>
+ * Each file is read by one mapper. The sidecars are named after the MD5 of the file path in the
+ * Bloom filter directory, and files whose sidecar is up to date for the same columns are skipped,
+ * so the job can be re-run as new files arrive. The values are added trimmed, and blank values are
+ * not added.
+ * <p/>
+ * A mapper reads its file twice: first to estimate the number of distinct values of each column
+ * with a {@link HyperLogLog}, then to add the values to one {@link BloomFilter} per column sized
+ * for that number, so the false positive probability holds for the whole file however many
+ * times the values repeat.
+ * <p/>
+ * The filters are per file, not per block, so a file is skipped as a whole or read as a whole.
+ *
+ * @author Younggue Bae
+ */
+public class BloomIndexJob extends AbstractJob {
+
+	/* conf keys */
+	static final String BLOOM_DIR = "bloom.dir";
+	static final String FPP = "bloom.fpp";
+
+	public static void main(String[] args) throws Exception {
+		ToolRunner.run(new Configuration(), new BloomIndexJob(), args);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		addOption("input", "i", "Path to job input directory(comma separated)", true);
+		addOption("output", "o", "The Bloom filter directory", true);
+		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
+		addOption("columns", null, "The key column indexes(comma separated)", true);
+		addOption("fpp", null, "The false positive probability of the filters(The default is 0.01)", false);
+
+		parseArguments(args);
+
+		String[] input = getOption("input").split(",");
+		Path bloomDir = new Path(getOption("output"));
+		String delimiter = getOption("delimiter", "\t");
+		if (delimiter.equals("\\t")) {
+			delimiter = "\t";
+		}
+		int[] columns = toIndexes(getOption("columns").split(","));
+
+		Configuration conf = getConf();
+		conf.set("delimiter", delimiter);
+		conf.set("columns", getOption("columns"));
+		conf.set(BLOOM_DIR, bloomDir.toString());
+		conf.setFloat(FPP, Float.parseFloat(getOption("fpp", "0.01")));
+
+		FileSystem bloomFs = bloomDir.getFileSystem(conf);
+		List<Path> stale = new ArrayList<Path>();
+		for (FileStatus file : IndexBuildJob.listFiles(input, conf)) {
+			BloomSidecarWritable sidecar = readSidecar(bloomDir, file.getPath(), conf);
+			if (sidecar == null || !sidecar.isCurrent(file) || !Arrays.equals(sidecar.getColumns(), columns)
+					|| sidecar.getVersion() < BloomSidecarWritable.VERSION) {
+				stale.add(file.getPath());
+			}
+		}
+		logger.info("files to filter == " + stale.size());
+		if (stale.isEmpty()) {
+			return 0;
+		}
+		bloomFs.mkdirs(bloomDir);
+
+		Job job = Job.getInstance(conf);
+
+		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, BloomMapper.class, null));
+		job.setJarByClass(BloomIndexJob.class);
+		job.setInputFormatClass(WholeTextInputFormat.class);
+		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputValueClass(NullWritable.class);
+		job.setMapperClass(BloomMapper.class);
+		job.setNumReduceTasks(0);
+		job.setMapSpeculativeExecution(false);
+		job.setOutputFormatClass(NullOutputFormat.class);
+
+		FileInputFormat.setInputPaths(job, stale.toArray(new Path[stale.size()]));
+
+		return job.waitForCompletion(true) ? 0 : 1;
+	}
+
+	static int[] toIndexes(String[] columns) {
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			indexes[i] = Integer.parseInt(columns[i].trim());
+		}
+		return indexes;
+	}
+
+	/**
+	 * Reads the sidecar of the file.
+	 *
+	 * @return the sidecar, or null if there is none.
+	 */
+	public static BloomSidecarWritable readSidecar(Path bloomDir, Path file, Configuration conf) throws IOException {
+		Path path = BloomFilterUtil.sidecarPath(bloomDir, file);
+		FileSystem fs = path.getFileSystem(conf);
+		if (!fs.exists(path)) {
+			return null;
+		}
+		BloomSidecarWritable sidecar = new BloomSidecarWritable();
+		FSDataInputStream in = fs.open(path);
+		try {
+			sidecar.readFields(in);
+		} finally {
+			in.close();
+		}
+		return sidecar;
+	}
+
+	/**
+	 * Reads text files whole, one split per file.
+	 */
+	public static class WholeTextInputFormat extends TextInputFormat {
+
+		@Override
+		protected boolean isSplitable(JobContext context, Path file) {
+			return false;
+		}
+	}
+
+	/**
+	 * Counts the distinct key column values of a file, adds them to filters of that size in a
+	 * second read of the file, and writes the sidecar at the end.
+	 */
+	public static class BloomMapper extends Mapper<LongWritable, Text, NullWritable, NullWritable> {
+
+		private DelimitedRecord record;
+		private int[] columns;
+		private HyperLogLog[] counters;
+		private BloomFilter[] filters;
+		/** true once every value is added, a partial filter would drop files holding a value */
+		private boolean complete = false;
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			Configuration conf = context.getConfiguration();
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
+			columns = toIndexes(conf.get("columns").split(","));
+			counters = new HyperLogLog[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				counters[i] = new HyperLogLog();
+			}
+		}
+
+		@Override
+		public void run(Context context) throws IOException, InterruptedException {
+			setup(context);
+			try {
+				// the first read counts the distinct values
+				while (context.nextKeyValue()) {
+					map(context.getCurrentKey(), context.getCurrentValue(), context);
+				}
+
+				Configuration conf = context.getConfiguration();
+				filters = new BloomFilter[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					long distinct = counters[i].cardinality();
+					System.out.println("distinct values of column " + columns[i] + " == " + distinct);
+					// a margin for the error of the estimate
+					filters[i] = BloomFilterUtil.newBloomFilter(distinct + distinct / 20 + 1, conf.getFloat(FPP, 0.01f));
+				}
+
+				// the second read adds them
+				String recordDelimiter = conf.get("textinputformat.record.delimiter");
+				LineRecordReader reader = new LineRecordReader(recordDelimiter == null ? null : recordDelimiter.getBytes("utf-8"));
+				try {
+					reader.initialize(context.getInputSplit(), context);
+					while (reader.nextKeyValue()) {
+						add(reader.getCurrentValue());
+					}
+				} finally {
+					reader.close();
+				}
+				complete = true;
+			} finally {
+				cleanup(context);
+			}
+		}
+
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			record.set(value);
+
+			for (int i = 0; i < columns.length; i++) {
+				if (hasValue(columns[i])) {
+					counters[i].add(record.getBytes(), record.getTrimmedStart(columns[i]), record.getTrimmedEnd(columns[i]));
+				}
+			}
+		}
+
+		private void add(Text value) {
+			record.set(value);
+
+			for (int i = 0; i < columns.length; i++) {
+				if (hasValue(columns[i])) {
+					filters[i].add(BloomFilterUtil.toKey(record.getBytes(), record.getTrimmedStart(columns[i]), record.getTrimmedEnd(columns[i])));
+				}
+			}
+		}
+
+		/**
+		 * @return false if the record has no such column or it is blank. A filter can not hold an
+		 * empty key, and no lookup asks for one as
+		 * {@link BloomFilterSkippingInputFormat#addRequiredValues} does not skip for a blank value.
+		 */
+		private boolean hasValue(int column) {
+			return column < record.size() && record.getTrimmedStart(column) < record.getTrimmedEnd(column);
+		}
+
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			if (!complete) {
+				return;
+			}
+			Configuration conf = context.getConfiguration();
+			Path file = ((FileSplit) context.getInputSplit()).getPath();
+			FileStatus status = file.getFileSystem(conf).getFileStatus(file);
+
+			Path path = BloomFilterUtil.sidecarPath(new Path(conf.get(BLOOM_DIR)), file);
+			FSDataOutputStream out = path.getFileSystem(conf).create(path, true);
+			try {
+				new BloomSidecarWritable(status, columns, filters).write(out);
+			} finally {
+				out.close();
+			}
+
+			super.cleanup(context);
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+package com.nextmining.hadoop.mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class reads a split of a file through a large reusable buffer, scanning for tags with the
+ * Knuth-Morris-Pratt algorithm and copying the bytes read into a record buffer range by range
+ * instead of byte by byte.
+ * <p/>
+ * A tag belongs to the split holding its first byte: {@link #readUntil(Tag, DataOutputBuffer, boolean)}
+ * stops once a match could only start at or past the end of the split, so a split reads exactly
+ * the records whose start tags begin in {@code [start, end)}.
+ * <p/>
+ * A file compressed by a splittable codec(bzip2) is read from the first block starting in the
+ * split, and a byte is in the split while the position of its block, as the decompressing stream
+ * reports it, is not past the end(like {@link org.apache.hadoop.mapreduce.lib.input.LineRecordReader}).
+ * The offsets of such a file count the decompressed bytes from the start of its first block.
+ * A file compressed by another codec is read as a whole in one split(see
+ * {@link org.apache.hadoop.mapreduce.lib.input.TextInputFormat#isSplitable}).
+ *
+ * @author Younggue Bae
+ */
+class BufferedSplitReader implements Closeable {
+
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int bufferLength;
+	private int bufferPos;
+	private final long start;
+	private final long end;
+	/** the offset of buffer[bufferPos] */
+	private long pos;
+	/** the offset of the first byte not in the split, once known */
+	private long splitLimit;
+	private boolean matchInSplit;
+
+	/** the stream of a splittable codec, which reports the position of its block, or null */
+	private SplitCompressionInputStream blockStream;
+	private Decompressor decompressor;
+
+	/**
+	 * @param start the offset in the file of the next byte of the stream.
+	 */
+	public BufferedSplitReader(InputStream in, long start, long end, int bufferSize) {
+		this.in = in;
+		this.start = start;
+		this.end = end;
+		this.pos = start;
+		this.splitLimit = end;
+		this.buffer = new byte[bufferSize];
+	}
+
+	private BufferedSplitReader(SplitCompressionInputStream in, Decompressor decompressor, int bufferSize) {
+		this(in, in.getAdjustedStart(), in.getAdjustedEnd(), bufferSize);
+		this.blockStream = in;
+		this.decompressor = decompressor;
+		// found by the positions of the blocks read
+		this.splitLimit = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Opens the split, decompressing it if the file has a codec.
+	 */
+	public static BufferedSplitReader open(FileSplit split, Configuration conf, int bufferSize) throws IOException {
+		Path file = split.getPath();
+		long start = split.getStart();
+		long end = start + split.getLength();
+
+		FileSystem fs = file.getFileSystem(conf);
+		FSDataInputStream fileIn = fs.open(file);
+
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		if (codec == null) {
+			fileIn.seek(start);
+			return new BufferedSplitReader(fileIn, start, end, bufferSize);
+		}
+
+		Decompressor decompressor = CodecPool.getDecompressor(codec);
+		if (codec instanceof SplittableCompressionCodec) {
+			SplitCompressionInputStream cIn = ((SplittableCompressionCodec) codec).createInputStream(fileIn,
+					decompressor, start, end, SplittableCompressionCodec.READ_MODE.BYBLOCK);
+			return new BufferedSplitReader(cIn, decompressor, bufferSize);
+		}
+		BufferedSplitReader reader = new BufferedSplitReader(codec.createInputStream(fileIn, decompressor), 0,
+				Long.MAX_VALUE, bufferSize);
+		reader.decompressor = decompressor;
+		return reader;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the offset of the next byte to read.
+	 */
+	public long getPos() {
+		return pos;
+	}
+
+	/**
+	 * @return true if the tag last matched by {@link #readUntil(Tag, DataOutputBuffer, boolean)}
+	 * starts in the split.
+	 */
+	public boolean isMatchInSplit() {
+		return matchInSplit;
+	}
+
+	public float getProgress() throws IOException {
+		if (end == start || end == Long.MAX_VALUE) {
+			return 0.0f;
+		}
+		long current = blockStream != null ? blockStream.getPos() : pos;
+		return Math.min(1.0f, (float) (current - start) / (float) (end - start));
+	}
+
+	/**
+	 * Reads up to and including the next occurrence of the tag, appending the bytes read to
+	 * {@code out} unless it is null.
+	 *
+	 * @param inSplit true if the tag must start in the split.
+	 * @return false at the end of the file, or when the tag could only start past the split.
+	 */
+	public boolean readUntil(Tag tag, DataOutputBuffer out, boolean inSplit) throws IOException {
+		int matched = 0;
+		while (true) {
+			if (bufferPos == bufferLength && !fill()) {
+				return false;
+			}
+
+			int from = bufferPos;
+			boolean found = false;
+			boolean stopped = false;
+			for (; bufferPos < bufferLength; bufferPos++) {
+				// the match so far started 'matched' bytes before this one
+				if (inSplit && pos + (bufferPos - from) - matched >= splitLimit) {
+					stopped = true;
+					break;
+				}
+				matched = tag.next(matched, buffer[bufferPos]);
+				if (matched == tag.length()) {
+					bufferPos++;
+					found = true;
+					break;
+				}
+			}
+
+			int length = bufferPos - from;
+			if (out != null) {
+				out.write(buffer, from, length);
+			}
+			pos += length;
+			if (found) {
+				matchInSplit = pos - tag.length() < splitLimit;
+				return true;
+			}
+			if (stopped) {
+				return false;
+			}
+		}
+	}
+
+	private boolean fill() throws IOException {
+		bufferPos = 0;
+		bufferLength = 0;
+		int n;
+		// a stream may return no bytes without being at its end
+		do {
+			n = in.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) {
+			return false;
+		}
+		bufferLength = n;
+
+		// a read of the bzip2 stream does not cross a block, and the position moves past the end
+		// with the first byte of the first block out of the split
+		if (blockStream != null && splitLimit == Long.MAX_VALUE && blockStream.getPos() > end) {
+			splitLimit = pos;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if (decompressor != null) {
+				CodecPool.returnDecompressor(decompressor);
+				decompressor = null;
+			}
+		}
+	}
+
+	/**
+	 * A tag with its Knuth-Morris-Pratt failure table, so that a mismatch falls back to the longest
+	 * prefix of the tag matched so far instead of to the start, and overlapping partial matches
+	 * such as {@code <pa<page>} are not missed.
+	 */
+	static class Tag {
+
+		private final byte[] bytes;
+		/** failure[i]: the length of the longest proper prefix of bytes[0..i] which is also its suffix */
+		private final int[] failure;
+
+		public Tag(byte[] bytes) {
+			if (bytes.length == 0) {
+				throw new IllegalArgumentException("The tag must not be empty!");
+			}
+			this.bytes = bytes;
+			failure = new int[bytes.length];
+			for (int i = 1, k = 0; i < bytes.length; i++) {
+				while (k > 0 && bytes[i] != bytes[k]) {
+					k = failure[k - 1];
+				}
+				if (bytes[i] == bytes[k]) {
+					k++;
+				}
+				failure[i] = k;
+			}
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public int length() {
+			return bytes.length;
+		}
+
+		/**
+		 * @return the number of bytes of the tag matched after the byte, given {@code matched}
+		 * bytes(less than the length) matched before it.
+		 */
+		int next(int matched, byte b) {
+			while (matched > 0 && bytes[matched] != b) {
+				matched = failure[matched - 1];
+			}
+			return bytes[matched] == b ? matched + 1 : 0;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.nextmining.hadoop.mapreduce;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads whole files such as json or html files, packing many small files into one split so that
+ * a map task reads many of them.
+ * <p/>
+ * The files of a split are grouped by node and rack up to {@code mapreduce.input.fileinputformat.split.maxsize}
+ * bytes(128 MB by default) like {@link CombineFileInputFormat}, and each file is a record of its
+ * path and bytes. A file larger than {@code wholefile.chunkSize} bytes(64 MB by default) comes as
+ * several records of the same path, its chunks in order, instead of one array.
+ *
+ * @author Younggue Bae
+ */
+public class CombineWholeFileInputFormat extends CombineFileInputFormat<Text, BytesWritable> {
+
+	public static final String CHUNK_SIZE_KEY = "wholefile.chunkSize";
+
+	public static final long DEFAULT_SPLIT_SIZE = 128L * 1024 * 1024;
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+	/** the largest chunk BytesWritable.setSize() can grow to, as it computes size * 3 / 2 in int */
+	public static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE / 3;
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path filename) {
+		return false;
+	}
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		if (job.getConfiguration().getLong(FileInputFormat.SPLIT_MAXSIZE, 0) == 0) {
+			// one split per node otherwise
+			setMaxSplitSize(DEFAULT_SPLIT_SIZE);
+		}
+		return super.getSplits(job);
+	}
+
+	@Override
+	public RecordReader<Text, BytesWritable> createRecordReader(InputSplit split, TaskAttemptContext context)
+			throws IOException {
+		return new CombineFileRecordReader<Text, BytesWritable>((CombineFileSplit) split, context, WholeFileChunkReader.class);
+	}
+
+	/**
+	 * This class reads a file of a combined split, chunk by chunk.
+	 */
+	public static class WholeFileChunkReader extends RecordReader<Text, BytesWritable> {
+
+		private final Path file;
+		private final long length;
+		private final Configuration conf;
+		private int chunkSize;
+		private FSDataInputStream in;
+		private long pos;
+		private boolean processed = false;
+
+		private final Text key = new Text();
+		private final BytesWritable value = new BytesWritable();
+
+		/**
+		 * @param index the index of the file in the split.
+		 */
+		public WholeFileChunkReader(CombineFileSplit split, TaskAttemptContext context, Integer index) {
+			this.file = split.getPath(index);
+			this.length = split.getLength(index);
+			this.conf = context.getConfiguration();
+		}
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+			chunkSize = conf.getInt(CHUNK_SIZE_KEY, DEFAULT_CHUNK_SIZE);
+			if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+				throw new IllegalArgumentException("The chunk size must be in (0, " + MAX_CHUNK_SIZE + "]: " + chunkSize);
+			}
+			key.set(file.toString());
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			if (processed) {
+				return false;
+			}
+			if (in == null) {
+				in = file.getFileSystem(conf).open(file);
+			}
+
+			int size = (int) Math.min(chunkSize, length - pos);
+			value.setSize(0);
+			value.setSize(size);
+			IOUtils.readFully(in, value.getBytes(), 0, size);
+			pos += size;
+
+			// an empty file is one empty record
+			if (pos >= length) {
+				processed = true;
+			}
+			return true;
+		}
+
+		@Override
+		public Text getCurrentKey() throws IOException, InterruptedException {
+			return key;
+		}
+
+		@Override
+		public BytesWritable getCurrentValue() throws IOException, InterruptedException {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException, InterruptedException {
+			if (processed) {
+				return 1.0f;
+			}
+			return length == 0 ? 0.0f : (float) pos / length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOUtils.closeStream(in);
+			in = null;
+		}
+	}
+
+}
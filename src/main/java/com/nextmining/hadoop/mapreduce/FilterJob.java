@@ -1,33 +1,57 @@
 package com.nextmining.hadoop.mapreduce;
 
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.iterator.FileLineIterator;
 import com.nextmining.hadoop.util.HadoopUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
  * This class is a driver to filter the records by the given condtions.
+ * <p/>
+ * With {@code --queryFile} several named conditions are evaluated in one scan of the input. The
+ * query file has one {@code name=condition} per line (blank lines and lines starting with '#' are
+ * ignored), the records matching a query are written under {@code <output>/<name>/} and the
+ * number of matches of each query is reported in the {@value #QUERY_COUNTER_GROUP} counter group.
+ * <p/>
+ * By default the job is map-only and the mappers write the matching records straight to the
+ * output. {@code --partitionBy} additionally writes each record into a sub directory per value of
+ * the given column(see {@link PartitionedOutput}), and {@code --dedupe} shuffles the records to
+ * reducers which write every distinct record once(per query).
+ * <p/>
+ * With {@code --bloomDir} the files whose Bloom filters(see {@link BloomIndexJob}) contain none of
+ * the values of a top level {@code eq} or {@code in} string condition are not read.
  * 
  * @author Younggue Bae
  */
 public class FilterJob extends AbstractJob {
 
+	public static final String QUERY_COUNTER_GROUP = "FilterJob Queries";
+
+	/* conf keys of the named queries */
+	static final String QUERY_NAMES = "filter.queries";
+	static final String QUERY_PREFIX = "filter.query.";
+
 	public static void main(String[] args) throws Exception {
 		ToolRunner.run(new Configuration(), new FilterJob(), args);
 	}
@@ -37,8 +61,13 @@ public class FilterJob extends AbstractJob {
 		addOption("input", "i", "Path to job input directory.", true);
 		addOption("output", "o", "The directory pathname for output.", true);
 		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
-		addOption("condition", "c", "The filter condition.(ex.[(column_index operator condition_value),...], operators: eq, ne, gt, lt, ge, le, in", true);
+		addOption("condition", "c", "The filter condition.(ex.[(column_index operator condition_value),...], operators: eq, ne, gt, lt, ge, le, in, combinators: and, or, not", false);
+		addOption("queryFile", "q", "File of named conditions(name=condition per line) evaluated in one scan, instead of --condition", false);
+		addOption("partitionBy", null, "The column index whose values partition the output into sub directories", false);
+		addFlag("dedupe", null, "Remove duplicate records in a reduce phase(The default is map-only)");
+		addOption("bloomDir", null, "The Bloom filter directory built by BloomIndexJob, to skip the files which can not satisfy the eq/in conditions(single condition only)", false);
 		//Usage: [(0 eq '게임'),(1 gt 50),(3 in '모바일,웹')]
+		//Usage: (0 eq '게임') and not ((1 le 50) or (3 in ('모바일', '웹')))
 		
 		parseArguments(args);
 
@@ -47,17 +76,37 @@ public class FilterJob extends AbstractJob {
 		String output = getOption("output");
 		String delimiter = getOption("delimiter", "\t");
 		String condition = getOption("condition");
+		String queryFile = getOption("queryFile");
+		String partitionBy = getOption("partitionBy");
+		boolean dedupe = hasOption("dedupe");
 		
     if (delimiter.equals("\\t")) {
     	delimiter = "\t";
     }
 
+		if ((condition == null) == (queryFile == null)) {
+			throw new IllegalArgumentException("Exactly one of --condition and --queryFile must be given!");
+		}
+
 		Configuration conf = getConf();
 		conf.set("delimiter", delimiter);
-		conf.set("condition", condition);
 
 		logger.info("delimiter == " + delimiter);
-		logger.info("condition == " + condition);
+
+		boolean multiQuery = queryFile != null;
+		if (multiQuery) {
+			Map<String, String> queries = readQueries(new Path(queryFile), conf);
+			conf.setStrings(QUERY_NAMES, queries.keySet().toArray(new String[queries.size()]));
+			for (Map.Entry<String, String> query : queries.entrySet()) {
+				conf.set(QUERY_PREFIX + query.getKey(), query.getValue());
+				logger.info("query " + query.getKey() + " == " + FilterPredicate.compile(query.getValue()));
+			}
+		}
+		else {
+			conf.set("condition", condition);
+			logger.info("condition == " + condition);
+			logger.info("predicate == " + FilterPredicate.compile(condition));
+		}
 
 		Path[] inputPath = new Path[input.length];
 		for (int i = 0; i < input.length; i++) {
@@ -67,16 +116,39 @@ public class FilterJob extends AbstractJob {
 
 		Job job = Job.getInstance(conf);
 
-		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, FilterMapper.class, Reducer.class));
 		job.setJarByClass(FilterJob.class);
-		job.setMapOutputKeyClass(NullWritable.class);
-		job.setMapOutputValueClass(Text.class);
 		job.setOutputKeyClass(NullWritable.class);
 		job.setOutputValueClass(Text.class);
-		job.setMapperClass(FilterMapper.class);
 		job.setInputFormatClass(TextInputFormat.class);
-		job.setReducerClass(FilterReducer.class);
-		job.setOutputFormatClass(TextOutputFormat.class);
+		if (dedupe) {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, FilterDedupeMapper.class, FilterReducer.class));
+			job.setMapOutputKeyClass(Text.class);
+			job.setMapOutputValueClass(IntWritable.class);
+			job.setMapperClass(FilterDedupeMapper.class);
+			job.setReducerClass(FilterReducer.class);
+		}
+		else {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, FilterMapper.class, null));
+			job.setMapperClass(FilterMapper.class);
+			job.setNumReduceTasks(0);
+		}
+		PartitionedOutput.configure(job, multiQuery, partitionBy == null ? -1 : Integer.parseInt(partitionBy));
+
+		String bloomDir = getOption("bloomDir");
+		if (bloomDir != null) {
+			BloomFilterSkippingInputFormat.setBloomDir(job, new Path(bloomDir));
+			if (multiQuery) {
+				logger.warn("Bloom filters are not used for multiple queries");
+			}
+			else {
+				for (Map.Entry<Integer, Set<String>> required : FilterPredicate.compile(condition).getRequiredValues().entrySet()) {
+					if (required.getValue().size() <= BloomFilterSkippingInputFormat.MAX_REQUIRED_VALUES) {
+						BloomFilterSkippingInputFormat.addRequiredValues(job, required.getKey(), required.getValue());
+						logger.info("required values of column " + required.getKey() + " == " + required.getValue());
+					}
+				}
+			}
+		}
 
 		FileInputFormat.setInputPaths(job, inputPath);
 		FileOutputFormat.setOutputPath(job, outputPath);
@@ -86,237 +158,222 @@ public class FilterJob extends AbstractJob {
 
 		return 0;
 	}
-	
-	@SuppressWarnings("rawtypes")
-	public static class FilterMapper extends Mapper<LongWritable, Text, NullWritable, Text> {
-
-		private String delimiter = "\t";
-		private List<FilterCondition> conditions;
-
-		@Override
-		public void setup(Context context) throws IOException, InterruptedException {
-			super.setup(context);
-
-			Configuration conf = context.getConfiguration();
 
-			delimiter = conf.get("delimiter", "\t");
-			conditions = convertConditions(conf.get("condition"));
-		}
+	/**
+	 * Reads the named conditions(name=condition per line) from the query file.
+	 */
+	static Map<String, String> readQueries(Path queryFile, Configuration conf) throws IOException {
+		Map<String, String> queries = new LinkedHashMap<String, String>();
 		
-		private List<FilterCondition> convertConditions(String strCondition) {
-			List<FilterCondition> conditions = new ArrayList<FilterCondition>();
-			
-			String[] strConds = strCondition.split("\\)\\,");
-			for (String strCond : strConds) {
-				strCond = strCond.replaceAll("\\[\\(", "").replaceAll("\\(", "").replaceAll("\\)\\]", "");
-				String[] field = strCond.split("\\s");
-				
-				int columnIndex = Integer.parseInt(field[0]);
-				String operator = field[1];
-				String strValue = field[2];
-				if ((strValue.startsWith("\'") && strValue.endsWith("\'")) || 
-						(strValue.startsWith("\"") && strValue.endsWith("\""))) {
-					strValue = strValue.replaceAll("\'", "").replaceAll("\"", "");
-					FilterCondition<String> condition = new FilterCondition<String>();
-					condition.setColumnIndex(columnIndex);
-					condition.setOperator(operator.toUpperCase());
-					condition.setValue(strValue);
-					
-					conditions.add(condition);
+		FileLineIterator it = new FileLineIterator(HadoopUtil.openStream(queryFile, conf));
+		try {
+			while (it.hasNext()) {
+				String line = it.next().trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				int index = line.indexOf('=');
+				if (index <= 0) {
+					throw new IllegalArgumentException("Invalid query(name=condition) in " + queryFile + ": " + line);
+				}
+				String name = line.substring(0, index).trim();
+				if (!name.matches("[A-Za-z0-9_\\-]+")) {
+					throw new IllegalArgumentException("Invalid query name(letters, digits, '_' and '-' only): " + name);
 				}
-				else {
-					FilterCondition<Double> condition = new FilterCondition<Double>();
-					condition.setColumnIndex(columnIndex);
-					condition.setOperator(operator.toUpperCase());
-					condition.setValue(Double.parseDouble(strValue));
-					
-					conditions.add(condition);
+				if (queries.put(name, line.substring(index + 1).trim()) != null) {
+					throw new IllegalArgumentException("Duplicate query name: " + name);
 				}
 			}
-			
-			System.out.println("conditions == " + conditions);
-			
-			return conditions;
+		} finally {
+			it.close();
+		}
+		
+		if (queries.isEmpty()) {
+			throw new IllegalArgumentException("No query in " + queryFile);
 		}
+		return queries;
+	}
+	
+	/**
+	 * The compiled queries(or the single condition) of the job.
+	 */
+	static class FilterQueries {
 		
-		private boolean satisfyConditions(String[] field, List<FilterCondition> conditions) {
+		private final DelimitedRecord record;
+		private final String[] names;
+		private final FilterPredicate[] predicates;
+		private final Counter[] counters;
+
+		@SuppressWarnings("rawtypes")
+		FilterQueries(TaskInputOutputContext context) {
+			Configuration conf = context.getConfiguration();
+
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
 			
-			for (FilterCondition condition : conditions) {
-				int columnIndex = condition.getColumnIndex();
-				String strFieldValue = field[columnIndex];
-				String operator = condition.getOperator();
-				Object objCondValue = condition.getValue();
-				
-				if (objCondValue instanceof String) {
-					String fieldValue = strFieldValue.trim();
-					String condValue = ((String) objCondValue).trim();
-					if (operator.equalsIgnoreCase(FilterCondition.EQ)) {
-						if (fieldValue.equals(condValue)) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.NE)) {
-						if (!fieldValue.equals(condValue)) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.GT)) {
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.LT)) {
-					}					
-					else if (operator.equalsIgnoreCase(FilterCondition.GE)) {
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.LE)) {
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.IN)) {
-						List<String> condValueList = Arrays.asList(condValue.split(","));
-						if (condValueList.contains(fieldValue)) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-				}
-				else if (objCondValue instanceof Double) {
-					double fieldValue = Double.parseDouble(strFieldValue.trim());
-					double condValue = (Double) objCondValue;
-					if (operator.equalsIgnoreCase(FilterCondition.EQ)) {
-						if (fieldValue == condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.NE)) {
-						if (fieldValue != condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.GT)) {
-						if (fieldValue > condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.LT)) {
-						if (fieldValue < condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}					
-					else if (operator.equalsIgnoreCase(FilterCondition.GE)) {
-						if (fieldValue >= condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.LE)) {
-						if (fieldValue <= condValue) {
-							continue;
-						}
-						else {
-							return false;
-						}
-					}
-					else if (operator.equalsIgnoreCase(FilterCondition.IN)) {
-					}
+			names = conf.getStrings(QUERY_NAMES);
+			if (names == null) {
+				predicates = new FilterPredicate[] { FilterPredicate.compile(conf.get("condition")) };
+				counters = null;
+				System.out.println("predicate == " + predicates[0]);
+			}
+			else {
+				predicates = new FilterPredicate[names.length];
+				counters = new Counter[names.length];
+				for (int i = 0; i < names.length; i++) {
+					predicates[i] = FilterPredicate.compile(conf.get(QUERY_PREFIX + names[i]));
+					counters[i] = context.getCounter(QUERY_COUNTER_GROUP, names[i]);
+					System.out.println("query " + names[i] + " == " + predicates[i]);
 				}
 			}
-			
-			return true;
+		}
+
+		boolean isMultiQuery() {
+			return names != null;
 		}
 		
-		@Override
-		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-			String record = value.toString();
-			String[] field = record.split(delimiter);
+		int size() {
+			return predicates.length;
+		}
 
-			if (this.satisfyConditions(field, conditions)) {
-				context.write(NullWritable.get(), value);
+		/**
+		 * @return the name of the i-th query, or null for the single condition.
+		 */
+		String getName(int i) {
+			return names == null ? null : names[i];
+		}
+
+		/**
+		 * Parses the record; the result is available from {@link #getRecord()}.
+		 */
+		void set(Text value) {
+			record.set(value);
+		}
+
+		DelimitedRecord getRecord() {
+			return record;
+		}
+
+		/**
+		 * @return true if the current record satisfies the i-th query.
+		 */
+		boolean matches(int i) {
+			if (predicates[i].evaluate(record)) {
+				if (counters != null) {
+					counters[i].increment(1);
+				}
+				return true;
 			}
+			return false;
 		}
 	}
+	
+	/**
+	 * Map-only filter which writes the matching records directly.
+	 */
+	public static class FilterMapper extends Mapper<LongWritable, Text, NullWritable, Text> {
 
-	public static class FilterReducer extends Reducer<NullWritable, Text, NullWritable, Text> {
+		private FilterQueries queries;
+		private PartitionedOutput<NullWritable, Text> output;
 
 		@Override
-		protected void reduce(NullWritable key, Iterable<Text> values, Context context) throws IOException,
-				InterruptedException {
-			
-			for (Text val : values) {
-				context.write(NullWritable.get(), val);
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			queries = new FilterQueries(context);
+			output = new PartitionedOutput<NullWritable, Text>(context, queries.isMultiQuery());
+		}
+		
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			queries.set(value);
+
+			for (int i = 0; i < queries.size(); i++) {
+				if (queries.matches(i)) {
+					output.write(queries.getName(i), queries.getRecord(), NullWritable.get(), value);
+				}
 			}
 		}
 
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			output.close();
+			super.cleanup(context);
+		}
 	}
-	
-	static class FilterCondition<T> {
-		private int columnIndex;
-		private String operator;
-		private T value;
-		
-		/* operater */
-		public static final String EQ = "EQ";
-		public static final String NE = "NE";
-		public static final String GT = "GT";
-		public static final String LT = "LT";
-		public static final String GE = "GE";
-		public static final String LE = "LE";
-		public static final String IN = "IN";
-		
-		public FilterCondition() { }
+
+	/**
+	 * Emits the matching records with the index of the matching query for {@link FilterReducer}.
+	 */
+	public static class FilterDedupeMapper extends Mapper<LongWritable, Text, Text, IntWritable> {
+
+		private FilterQueries queries;
 		
-		public FilterCondition(int columnIndex, String operator, T value) {
-			this.columnIndex = columnIndex;
-			this.operator = operator;
-			this.value = value;
-		}
+		private final IntWritable outValue = new IntWritable();
 
-		public int getColumnIndex() {
-			return columnIndex;
-		}
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
 
-		public void setColumnIndex(int columnIndex) {
-			this.columnIndex = columnIndex;
+			queries = new FilterQueries(context);
 		}
+		
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			queries.set(value);
 
-		public String getOperator() {
-			return operator;
+			for (int i = 0; i < queries.size(); i++) {
+				if (queries.matches(i)) {
+					outValue.set(i);
+					context.write(value, outValue);
+				}
+			}
 		}
+	}
 
-		public void setOperator(String operator) {
-			this.operator = operator;
-		}
+	/**
+	 * Writes every distinct record once per matching query.
+	 */
+	public static class FilterReducer extends Reducer<Text, IntWritable, NullWritable, Text> {
+
+		private String[] names;
+		private boolean[] written;
+		private DelimitedRecord record;
+		private PartitionedOutput<NullWritable, Text> output;
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
 
-		public T getValue() {
-			return value;
+			Configuration conf = context.getConfiguration();
+			
+			names = conf.getStrings(QUERY_NAMES);
+			written = new boolean[names == null ? 1 : names.length];
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
+			output = new PartitionedOutput<NullWritable, Text>(context, names != null);
 		}
 
-		public void setValue(T value) {
-			this.value = value;
+		@Override
+		protected void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException,
+				InterruptedException {
+			
+			record.set(key);
+			Arrays.fill(written, false);
+			
+			for (IntWritable val : values) {
+				int query = val.get();
+				if (!written[query]) {
+					written[query] = true;
+					output.write(names == null ? null : names[query], record, NullWritable.get(), key);
+				}
+			}
 		}
-		
-		public String toString() {
-			return "(" + columnIndex + " " + operator + " " + value + ")";
+
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			output.close();
+			super.cleanup(context);
 		}
-		
+
 	}
 
 }
@@ -0,0 +1,499 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BytesHashSet;
+import com.nextmining.hadoop.io.DelimitedRecord;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A filter condition compiled into a predicate tree.
+ * <p/>
+ * The condition string is parsed once (e.g. in the mapper's {@code setup()}) and the resulting
+ * tree is evaluated for every record without re-dispatching on operator strings. Operators are
+ * resolved to {@link Operator} constants, numeric constants are pre-parsed and the values of
+ * {@code IN} conditions are held in a hash set (strings) or a sorted array (numbers). Records are
+ * evaluated as a {@link DelimitedRecord}, so string conditions compare UTF-8 bytes (trimmed, as
+ * before) and numeric conditions parse the field bytes directly.
+ * <p/>
+ * Grammar:
+ * <pre>
+ *   expr       := andExpr ( "or" andExpr )*
+ *   andExpr    := unary ( ("and" | ",") unary )*
+ *   unary      := "not" unary | "(" expr ")" | "[" expr "]" | comparison
+ *   comparison := column_index operator value
+ *   value      := 'string' | "string" | number | "(" value ( "," value )* ")"
+ * </pre>
+ * The legacy form {@code [(0 eq '게임'),(1 gt 50),(3 in '모바일,웹')]} is a valid expression and
+ * means the AND of all conditions. A quoted value is compared as a string, an unquoted value as
+ * a number. Example: {@code (0 eq '게임') and not (1 le 50 or 3 in ('모바일', '웹'))}.
+ */
+public abstract class FilterPredicate {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** comparison operators */
+	public enum Operator {
+		EQ, NE, GT, LT, GE, LE, IN;
+
+		public static Operator of(String operator) {
+			try {
+				return valueOf(operator.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown filter operator: " + operator);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the record satisfies this predicate.
+	 */
+	public abstract boolean evaluate(DelimitedRecord record);
+
+	/**
+	 * Returns the string values which a column must have for this predicate to hold, i.e. the
+	 * {@code eq} and {@code in} string comparisons ANDed at the top of the tree. A column compared
+	 * more than once must have one of the common values. The values are trimmed.
+	 */
+	public Map<Integer, Set<String>> getRequiredValues() {
+		Map<Integer, Set<String>> required = new LinkedHashMap<Integer, Set<String>>();
+		collectRequiredValues(required);
+		return required;
+	}
+
+	void collectRequiredValues(Map<Integer, Set<String>> required) {
+		// no requirement by default
+	}
+
+	private static void require(Map<Integer, Set<String>> required, int columnIndex, Collection<String> values) {
+		Set<String> current = required.get(columnIndex);
+		if (current == null) {
+			required.put(columnIndex, new LinkedHashSet<String>(values));
+		}
+		else {
+			current.retainAll(values);
+		}
+	}
+
+	/**
+	 * Compiles the condition string into a predicate tree.
+	 *
+	 * @throws IllegalArgumentException if the condition cannot be parsed.
+	 */
+	public static FilterPredicate compile(String condition) {
+		if (condition == null || condition.trim().isEmpty()) {
+			throw new IllegalArgumentException("Filter condition is empty!");
+		}
+		Parser parser = new Parser(condition);
+		FilterPredicate predicate = parser.parseExpr();
+		if (parser.peek() != null) {
+			throw new IllegalArgumentException("Unexpected token '" + parser.peek() + "' in condition: " + condition);
+		}
+		return predicate;
+	}
+
+	/** AND of the child predicates */
+	static class And extends FilterPredicate {
+		private final FilterPredicate[] children;
+
+		And(List<FilterPredicate> children) {
+			this.children = children.toArray(new FilterPredicate[children.size()]);
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			for (int i = 0; i < children.length; i++) {
+				if (!children[i].evaluate(record)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		void collectRequiredValues(Map<Integer, Set<String>> required) {
+			for (FilterPredicate child : children) {
+				child.collectRequiredValues(required);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(children, " and ");
+		}
+	}
+
+	/** OR of the child predicates */
+	static class Or extends FilterPredicate {
+		private final FilterPredicate[] children;
+
+		Or(List<FilterPredicate> children) {
+			this.children = children.toArray(new FilterPredicate[children.size()]);
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			for (int i = 0; i < children.length; i++) {
+				if (children[i].evaluate(record)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return join(children, " or ");
+		}
+	}
+
+	/** negation of the child predicate */
+	static class Not extends FilterPredicate {
+		private final FilterPredicate child;
+
+		Not(FilterPredicate child) {
+			this.child = child;
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			return !child.evaluate(record);
+		}
+
+		@Override
+		public String toString() {
+			return "not " + child;
+		}
+	}
+
+	/** comparison of a column with a string constant */
+	static class StringComparison extends FilterPredicate {
+		private final int columnIndex;
+		private final Operator operator;
+		private final String value;
+		private final byte[] bytes;
+
+		StringComparison(int columnIndex, Operator operator, String value) {
+			this.columnIndex = columnIndex;
+			this.operator = operator;
+			this.value = value.trim();
+			this.bytes = this.value.getBytes(UTF8);
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			int start = record.getTrimmedStart(columnIndex);
+			int end = record.getTrimmedEnd(columnIndex);
+			int cmp = WritableComparator.compareBytes(record.getBytes(), start, end - start, bytes, 0, bytes.length);
+			switch (operator) {
+				case EQ: return cmp == 0;
+				case NE: return cmp != 0;
+				case GT: return cmp > 0;
+				case LT: return cmp < 0;
+				case GE: return cmp >= 0;
+				case LE: return cmp <= 0;
+				default: throw new IllegalStateException("Unsupported operator: " + operator);
+			}
+		}
+
+		@Override
+		void collectRequiredValues(Map<Integer, Set<String>> required) {
+			if (operator == Operator.EQ) {
+				require(required, columnIndex, Collections.singleton(value));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "(" + columnIndex + " " + operator + " '" + value + "')";
+		}
+	}
+
+	/** comparison of a column with a numeric constant */
+	static class NumericComparison extends FilterPredicate {
+		private final int columnIndex;
+		private final Operator operator;
+		private final double value;
+
+		NumericComparison(int columnIndex, Operator operator, double value) {
+			this.columnIndex = columnIndex;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			double fieldValue = record.getDouble(columnIndex);
+			switch (operator) {
+				case EQ: return fieldValue == value;
+				case NE: return fieldValue != value;
+				case GT: return fieldValue > value;
+				case LT: return fieldValue < value;
+				case GE: return fieldValue >= value;
+				case LE: return fieldValue <= value;
+				default: throw new IllegalStateException("Unsupported operator: " + operator);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "(" + columnIndex + " " + operator + " " + value + ")";
+		}
+	}
+
+	/** membership of a column in a set of string constants */
+	static class StringIn extends FilterPredicate {
+		private final int columnIndex;
+		private final List<String> values;
+		private final BytesHashSet set;
+
+		StringIn(int columnIndex, List<String> values) {
+			this.columnIndex = columnIndex;
+			this.values = new ArrayList<String>();
+			for (String value : values) {
+				this.values.add(value.trim());
+			}
+			this.set = new BytesHashSet(this.values);
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			int start = record.getTrimmedStart(columnIndex);
+			int end = record.getTrimmedEnd(columnIndex);
+			return set.contains(record.getBytes(), start, end - start);
+		}
+
+		@Override
+		void collectRequiredValues(Map<Integer, Set<String>> required) {
+			require(required, columnIndex, values);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + columnIndex + " IN " + values + ")";
+		}
+	}
+
+	/** membership of a column in a set of numeric constants */
+	static class NumericIn extends FilterPredicate {
+		private final int columnIndex;
+		private final double[] values;
+
+		NumericIn(int columnIndex, List<Double> values) {
+			this.columnIndex = columnIndex;
+			this.values = new double[values.size()];
+			for (int i = 0; i < this.values.length; i++) {
+				this.values[i] = values.get(i);
+			}
+			Arrays.sort(this.values);
+		}
+
+		@Override
+		public boolean evaluate(DelimitedRecord record) {
+			return Arrays.binarySearch(values, record.getDouble(columnIndex)) >= 0;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + columnIndex + " IN " + Arrays.toString(values) + ")";
+		}
+	}
+
+	private static String join(FilterPredicate[] children, String operator) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < children.length; i++) {
+			if (i > 0) {
+				sb.append(operator);
+			}
+			sb.append(children[i]);
+		}
+		return sb.append(")").toString();
+	}
+
+	/** A recursive descent parser for the condition grammar. */
+	static class Parser {
+		private final String condition;
+		private final List<String> tokens;
+		private int index;
+
+		Parser(String condition) {
+			this.condition = condition;
+			this.tokens = tokenize(condition);
+		}
+
+		String peek() {
+			return index < tokens.size() ? tokens.get(index) : null;
+		}
+
+		private String next() {
+			String token = peek();
+			if (token == null) {
+				throw new IllegalArgumentException("Unexpected end of condition: " + condition);
+			}
+			index++;
+			return token;
+		}
+
+		private void expect(String expected) {
+			String token = next();
+			if (!token.equals(expected)) {
+				throw new IllegalArgumentException("Expected '" + expected + "' but found '" + token + "' in condition: " + condition);
+			}
+		}
+
+		FilterPredicate parseExpr() {
+			List<FilterPredicate> children = new ArrayList<FilterPredicate>();
+			children.add(parseAnd());
+			while ("or".equalsIgnoreCase(peek())) {
+				next();
+				children.add(parseAnd());
+			}
+			return children.size() == 1 ? children.get(0) : new Or(children);
+		}
+
+		private FilterPredicate parseAnd() {
+			List<FilterPredicate> children = new ArrayList<FilterPredicate>();
+			children.add(parseUnary());
+			while ("and".equalsIgnoreCase(peek()) || ",".equals(peek())) {
+				next();
+				children.add(parseUnary());
+			}
+			return children.size() == 1 ? children.get(0) : new And(children);
+		}
+
+		private FilterPredicate parseUnary() {
+			String token = next();
+			if ("not".equalsIgnoreCase(token)) {
+				return new Not(parseUnary());
+			}
+			else if (token.equals("(")) {
+				FilterPredicate predicate = parseExpr();
+				expect(")");
+				return predicate;
+			}
+			else if (token.equals("[")) {
+				FilterPredicate predicate = parseExpr();
+				expect("]");
+				return predicate;
+			}
+			return parseComparison(token);
+		}
+
+		private FilterPredicate parseComparison(String strColumnIndex) {
+			int columnIndex;
+			try {
+				columnIndex = Integer.parseInt(strColumnIndex);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid column index '" + strColumnIndex + "' in condition: " + condition);
+			}
+			Operator operator = Operator.of(next());
+
+			List<String> values = new ArrayList<String>();
+			boolean quoted;
+			if ("(".equals(peek())) {
+				next();
+				quoted = isQuoted(peek());
+				values.add(parseValue(quoted));
+				while (",".equals(peek())) {
+					next();
+					values.add(parseValue(quoted));
+				}
+				expect(")");
+			}
+			else {
+				quoted = isQuoted(peek());
+				String value = parseValue(quoted);
+				if (quoted && operator == Operator.IN) {
+					// legacy form: (3 in '모바일,웹')
+					values.addAll(Arrays.asList(value.split(",")));
+				}
+				else {
+					values.add(value);
+				}
+			}
+
+			if (operator == Operator.IN) {
+				if (quoted) {
+					return new StringIn(columnIndex, values);
+				}
+				List<Double> numbers = new ArrayList<Double>();
+				for (String value : values) {
+					numbers.add(parseNumber(value));
+				}
+				return new NumericIn(columnIndex, numbers);
+			}
+			if (values.size() != 1) {
+				throw new IllegalArgumentException("Operator " + operator + " takes a single value in condition: " + condition);
+			}
+			if (quoted) {
+				return new StringComparison(columnIndex, operator, values.get(0));
+			}
+			return new NumericComparison(columnIndex, operator, parseNumber(values.get(0)));
+		}
+
+		private String parseValue(boolean quoted) {
+			String token = next();
+			if (quoted != isQuoted(token)) {
+				throw new IllegalArgumentException("Mixed quoted and numeric values near '" + token + "' in condition: " + condition);
+			}
+			return quoted ? token.substring(1, token.length() - 1) : token;
+		}
+
+		private double parseNumber(String value) {
+			try {
+				return Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid numeric value '" + value + "' in condition: " + condition);
+			}
+		}
+
+		private static boolean isQuoted(String token) {
+			return token != null && token.length() >= 2
+					&& (token.charAt(0) == '\'' || token.charAt(0) == '"');
+		}
+
+		private static List<String> tokenize(String condition) {
+			List<String> tokens = new ArrayList<String>();
+			int i = 0;
+			int length = condition.length();
+			while (i < length) {
+				char ch = condition.charAt(i);
+				if (Character.isWhitespace(ch)) {
+					i++;
+				}
+				else if (ch == '(' || ch == ')' || ch == '[' || ch == ']' || ch == ',') {
+					tokens.add(String.valueOf(ch));
+					i++;
+				}
+				else if (ch == '\'' || ch == '"') {
+					int close = condition.indexOf(ch, i + 1);
+					if (close < 0) {
+						throw new IllegalArgumentException("Unterminated quote in condition: " + condition);
+					}
+					tokens.add(condition.substring(i, close + 1));
+					i = close + 1;
+				}
+				else {
+					int begin = i;
+					while (i < length && !Character.isWhitespace(condition.charAt(i))
+							&& "()[],'\"".indexOf(condition.charAt(i)) < 0) {
+						i++;
+					}
+					tokens.add(condition.substring(begin, i));
+				}
+			}
+			return tokens;
+		}
+	}
+
+}
@@ -0,0 +1,451 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.PostingListWritable;
+import com.nextmining.hadoop.io.TextPairWritable;
+import com.nextmining.hadoop.iterator.FileLineIterator;
+import com.nextmining.hadoop.util.HadoopUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * This class is a driver to build an inverted index of delimited text files.
+ * <p/>
+ * The index maps each (column index, value) of the indexed columns to the postings, i.e. the
+ * (file id, byte offset) of every line having the value in the column. It is written as
+ * {@link MapFile}s, one per reducer, so that a value is looked up with a binary search instead of
+ * a scan(see {@link IndexReader} and {@code SearchJob --useIndex}). The index directory also holds
+ * <ul>
+ *   <li>{@value #FILES}: the indexed files(path, length and modification time per line), the line
+ *   number being the file id,</li>
+ *   <li>{@value #COLUMNS}: the indexed column indexes(comma separated).</li>
+ * </ul>
+ * The offsets only make sense for uncompressed files, so compressed inputs are rejected, and an
+ * index is stale as soon as one of its files has been changed.
+ * <p/>
+ * A value with more than {@code --maxPostings} postings(e.g. of a low cardinality column) is not
+ * worth an index lookup and would not fit in the memory of a reducer, so it is written with an
+ * empty posting list instead, which a value in the index never has, and counted.
+ *
+ * @author Younggue Bae
+ */
+public class IndexBuildJob extends AbstractJob {
+
+	public static final String FILES = "_files";
+	public static final String COLUMNS = "_columns";
+
+	/* conf key of the file table, read by the mappers */
+	static final String FILES_PATH = "index.files";
+	static final String MAX_POSTINGS = "index.maxPostings";
+
+	static final int DEFAULT_MAX_POSTINGS = 100000;
+
+	static final String INDEX_COUNTER_GROUP = "IndexBuild";
+
+	public static void main(String[] args) throws Exception {
+		ToolRunner.run(new Configuration(), new IndexBuildJob(), args);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		addOption("input", "i", "Path to job input directory(comma separated)", true);
+		addOption("output", "o", "The directory pathname for the index", true);
+		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
+		addOption("columns", null, "The column indexes to index(comma separated)", true);
+		addOption("maxPostings", null, "The most postings of a value, a value with more is not indexed(The default is 100000)", false);
+
+		parseArguments(args);
+
+		String[] input = getOption("input").split(",");
+		String output = getOption("output");
+		String delimiter = getOption("delimiter", "\t");
+		if (delimiter.equals("\\t")) {
+			delimiter = "\t";
+		}
+		String columns = getOption("columns");
+		for (String column : columns.split(",")) {
+			Integer.parseInt(column.trim());
+		}
+
+		Configuration conf = getConf();
+		conf.set("delimiter", delimiter);
+		conf.set("columns", columns);
+		conf.setInt(MAX_POSTINGS, Integer.parseInt(getOption("maxPostings", String.valueOf(DEFAULT_MAX_POSTINGS))));
+
+		List<FileStatus> files = listFiles(input, conf);
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("No input file to index!");
+		}
+		CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+		for (FileStatus file : files) {
+			if (codecs.getCodec(file.getPath()) != null) {
+				throw new IllegalArgumentException("Compressed file can not be indexed: " + file.getPath());
+			}
+		}
+		logger.info("files == " + files.size());
+
+		Path outputPath = new Path(output);
+		Path filesPath = new Path(outputPath.getParent(), "." + outputPath.getName() + FILES);
+		HadoopUtil.delete(conf, outputPath, filesPath);
+		writeFiles(files, filesPath, conf);
+		conf.set(FILES_PATH, filesPath.toString());
+
+		Path[] inputPath = new Path[files.size()];
+		for (int i = 0; i < inputPath.length; i++) {
+			inputPath[i] = files.get(i).getPath();
+		}
+
+		Job job = Job.getInstance(conf);
+
+		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, IndexMapper.class, IndexReducer.class));
+		job.setJarByClass(IndexBuildJob.class);
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setMapOutputKeyClass(TextPairWritable.class);
+		job.setMapOutputValueClass(PostingListWritable.class);
+		job.setOutputKeyClass(TextPairWritable.class);
+		job.setOutputValueClass(PostingListWritable.class);
+		job.setMapperClass(IndexMapper.class);
+		job.setCombinerClass(IndexReducer.class);
+		job.setReducerClass(IndexReducer.class);
+		job.setOutputFormatClass(MapFileOutputFormat.class);
+
+		FileInputFormat.setInputPaths(job, inputPath);
+		FileOutputFormat.setOutputPath(job, outputPath);
+
+		boolean success = job.waitForCompletion(true);
+
+		FileSystem fs = outputPath.getFileSystem(conf);
+		if (success) {
+			logger.info("values over the postings limit == "
+					+ job.getCounters().findCounter(INDEX_COUNTER_GROUP, "OVERFLOW_VALUES").getValue());
+			fs.rename(filesPath, new Path(outputPath, FILES));
+			FSDataOutputStream out = fs.create(new Path(outputPath, COLUMNS));
+			try {
+				out.write(columns.getBytes("utf-8"));
+			} finally {
+				out.close();
+			}
+		}
+		else {
+			fs.delete(filesPath, false);
+		}
+
+		return success ? 0 : 1;
+	}
+
+	/**
+	 * Lists the files under the input paths(recursively, skipping hidden files) sorted by path.
+	 */
+	static List<FileStatus> listFiles(String[] input, Configuration conf) throws IOException {
+		List<FileStatus> files = new ArrayList<FileStatus>();
+
+		for (String in : input) {
+			Path path = new Path(in.trim());
+			FileSystem fs = path.getFileSystem(conf);
+			FileStatus[] globbed = fs.globStatus(path);
+			if (globbed == null || globbed.length == 0) {
+				throw new IOException("Input path does not exist: " + path);
+			}
+			for (FileStatus status : globbed) {
+				if (!status.isDirectory()) {
+					files.add(status);
+					continue;
+				}
+				RemoteIterator<LocatedFileStatus> it = fs.listFiles(status.getPath(), true);
+				while (it.hasNext()) {
+					LocatedFileStatus file = it.next();
+					if (!isHidden(status.getPath(), file.getPath())) {
+						files.add(file);
+					}
+				}
+			}
+		}
+
+		Collections.sort(files, HadoopUtil.PATH_ORDER);
+		for (int i = files.size() - 1; i > 0; i--) {
+			if (files.get(i).getPath().equals(files.get(i - 1).getPath())) {
+				files.remove(i);
+			}
+		}
+		return files;
+	}
+
+	/* true if the file or one of its directories below the input directory starts with '_' or '.' */
+	private static boolean isHidden(Path dir, Path file) {
+		int depth = dir.depth();
+		for (Path p = file; p != null && p.depth() > depth; p = p.getParent()) {
+			String name = p.getName();
+			if (name.startsWith("_") || name.startsWith(".")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void writeFiles(List<FileStatus> files, Path path, Configuration conf) throws IOException {
+		FSDataOutputStream out = path.getFileSystem(conf).create(path);
+		try {
+			for (FileStatus file : files) {
+				String line = file.getPath() + "\t" + file.getLen() + "\t" + file.getModificationTime() + "\n";
+				out.write(line.getBytes("utf-8"));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the file table of an index.
+	 *
+	 * @return the (path, length, modification time) of the files indexed by file id.
+	 */
+	static List<String[]> readFiles(Path path, Configuration conf) throws IOException {
+		List<String[]> files = new ArrayList<String[]>();
+		FileLineIterator it = new FileLineIterator(HadoopUtil.openStream(path, conf));
+		try {
+			while (it.hasNext()) {
+				String line = it.next();
+				int second = line.lastIndexOf('\t');
+				int first = line.lastIndexOf('\t', second - 1);
+				files.add(new String[] { line.substring(0, first), line.substring(first + 1, second), line.substring(second + 1) });
+			}
+		} finally {
+			it.close();
+		}
+		return files;
+	}
+
+	/**
+	 * Emits a posting for the value of each indexed column of the line.
+	 */
+	public static class IndexMapper extends Mapper<LongWritable, Text, TextPairWritable, PostingListWritable> {
+
+		private DelimitedRecord record;
+		private int[] columns;
+		private Text[] columnNames;
+		private int fileId = -1;
+
+		private final TextPairWritable outKey = new TextPairWritable();
+		private final PostingListWritable outValue = new PostingListWritable();
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			Configuration conf = context.getConfiguration();
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
+
+			String[] strColumns = conf.get("columns").split(",");
+			columns = new int[strColumns.length];
+			columnNames = new Text[strColumns.length];
+			for (int i = 0; i < strColumns.length; i++) {
+				columns[i] = Integer.parseInt(strColumns[i].trim());
+				columnNames[i] = new Text(String.valueOf(columns[i]));
+			}
+
+			String path = ((FileSplit) context.getInputSplit()).getPath().toString();
+			List<String[]> files = readFiles(new Path(conf.get(FILES_PATH)), conf);
+			for (int i = 0; i < files.size(); i++) {
+				if (files.get(i)[0].equals(path)) {
+					fileId = i;
+					break;
+				}
+			}
+			if (fileId < 0) {
+				throw new IOException("File is not in the file table: " + path);
+			}
+		}
+
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			record.set(value);
+
+			outValue.clear();
+			outValue.add(fileId, key.get());
+			for (int i = 0; i < columns.length; i++) {
+				if (columns[i] >= record.size()) {
+					continue;
+				}
+				int start = record.getStart(columns[i]);
+				outKey.getFirst().set(columnNames[i]);
+				outKey.getSecond().set(record.getBytes(), start, record.getEnd(columns[i]) - start);
+				context.write(outKey, outValue);
+			}
+		}
+	}
+
+	/**
+	 * Merges the postings of a (column, value) into one sorted list, or into an empty list if the
+	 * value has more than the maximum postings. Also used as the combiner.
+	 */
+	public static class IndexReducer extends Reducer<TextPairWritable, PostingListWritable, TextPairWritable, PostingListWritable> {
+
+		private final PostingListWritable postings = new PostingListWritable();
+		private int maxPostings;
+		private boolean combiner;
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			maxPostings = context.getConfiguration().getInt(MAX_POSTINGS, DEFAULT_MAX_POSTINGS);
+			combiner = context.getTaskAttemptID().getTaskType() != TaskType.REDUCE;
+		}
+
+		@Override
+		protected void reduce(TextPairWritable key, Iterable<PostingListWritable> values, Context context) throws IOException,
+				InterruptedException {
+
+			postings.clear();
+			boolean overflow = false;
+			for (PostingListWritable val : values) {
+				// an empty list is a value already over the limit
+				if (val.size() == 0 || postings.size() + val.size() > maxPostings) {
+					overflow = true;
+					break;
+				}
+				postings.addAll(val);
+			}
+			if (overflow) {
+				postings.clear();
+				if (!combiner) {
+					context.getCounter(INDEX_COUNTER_GROUP, "OVERFLOW_VALUES").increment(1);
+				}
+			}
+			else {
+				postings.sort();
+			}
+			context.write(key, postings);
+		}
+	}
+
+	/**
+	 * Looks up the postings of values in an index built by {@link IndexBuildJob}.
+	 */
+	public static class IndexReader implements Closeable {
+
+		private final Configuration conf;
+		private final MapFile.Reader[] readers;
+		private final HashPartitioner<TextPairWritable, PostingListWritable> partitioner = new HashPartitioner<TextPairWritable, PostingListWritable>();
+		private final List<String[]> files;
+		private final int[] columns;
+
+		private final TextPairWritable key = new TextPairWritable();
+
+		public IndexReader(Path indexDir, Configuration conf) throws IOException {
+			this.conf = conf;
+			FileSystem fs = indexDir.getFileSystem(conf);
+
+			files = readFiles(new Path(indexDir, FILES), conf);
+
+			FileLineIterator it = new FileLineIterator(HadoopUtil.openStream(new Path(indexDir, COLUMNS), conf));
+			try {
+				String[] strColumns = it.next().split(",");
+				columns = new int[strColumns.length];
+				for (int i = 0; i < strColumns.length; i++) {
+					columns[i] = Integer.parseInt(strColumns[i].trim());
+				}
+			} finally {
+				it.close();
+			}
+
+			// MapFileOutputFormat.getReaders() would also take _SUCCESS for a map file
+			List<FileStatus> parts = new ArrayList<FileStatus>();
+			for (FileStatus status : HadoopUtil.listStatus(fs, indexDir)) {
+				if (status.isDirectory() && status.getPath().getName().startsWith("part-")) {
+					parts.add(status);
+				}
+			}
+			// in the order of the partitions
+			Collections.sort(parts, HadoopUtil.PATH_ORDER);
+			readers = new MapFile.Reader[parts.size()];
+			for (int i = 0; i < readers.length; i++) {
+				readers[i] = new MapFile.Reader(parts.get(i).getPath(), conf);
+			}
+		}
+
+		/**
+		 * @return true if the column is indexed.
+		 */
+		public boolean isIndexed(int column) {
+			for (int c : columns) {
+				if (c == column) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Looks up the postings of the value of the column.
+		 *
+		 * @return true if the value is in the index, its postings read into {@code postings}. They
+		 * are empty if the value has more than the maximum postings, which are not indexed.
+		 */
+		public boolean lookup(int column, String value, PostingListWritable postings) throws IOException {
+			if (!isIndexed(column)) {
+				throw new IllegalArgumentException("Column " + column + " is not indexed: " + Arrays.toString(columns));
+			}
+			key.getFirst().set(String.valueOf(column));
+			key.getSecond().set(value);
+			return MapFileOutputFormat.getEntry(readers, partitioner, key, postings) != null;
+		}
+
+		/**
+		 * @return the number of indexed files.
+		 */
+		public int getNumFiles() {
+			return files.size();
+		}
+
+		/**
+		 * @return the path of the indexed file.
+		 * @throws IOException if the file has been changed since the index was built.
+		 */
+		public Path getFile(int fileId) throws IOException {
+			String[] file = files.get(fileId);
+			Path path = new Path(file[0]);
+			FileStatus status = path.getFileSystem(conf).getFileStatus(path);
+			if (status.getLen() != Long.parseLong(file[1]) || status.getModificationTime() != Long.parseLong(file[2])) {
+				throw new IOException("Index is stale, the file has been changed: " + path);
+			}
+			return path;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (MapFile.Reader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+}
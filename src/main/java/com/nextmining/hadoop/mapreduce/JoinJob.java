@@ -1,104 +1,283 @@
 package com.nextmining.hadoop.mapreduce;
 
 
-import com.nextmining.hadoop.io.TextPairWritable;
+import com.nextmining.hadoop.io.BytesMultiMap;
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.JoinKeyWritable;
+import com.nextmining.hadoop.iterator.FileLineIterator;
+import com.nextmining.hadoop.util.BloomFilterUtil;
 import com.nextmining.hadoop.util.HadoopUtil;
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
 import org.apache.hadoop.util.ToolRunner;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.*;
 
 
 /**
  * This class is a driver to join the base input with joinable input.
- * 
+ * <p/>
+ * {@code --inputs} joins any number of inputs in one shuffle, each with its own key and value
+ * columns({@code --keyColumns 0;1,2;0 --valueColumns *;3;1,4}, {@code *} for the whole record). The
+ * key of a map output({@link JoinKeyWritable}) is the key columns, each prefixed by its length, and
+ * a one byte tag, compared raw, so that the records of a key arrive input by input:
+ * the second and later inputs first, buffered in the reducer, and the first input last, streamed.
+ * So the first input should be the largest one. The output record is the values of every input in
+ * order, with a blank for each value column of an input without a match. The join type decides
+ * which inputs must match: every input({@code inner}), the first({@code left}, the default), the
+ * last({@code right}) or any({@code full}).
+ * <p/>
+ * {@code --inputBase/--inputJoin} is the two-input join of the whole base record with the join
+ * value columns. For an inner join on a single key column, {@code --bloomDir} reads the distinct
+ * keys of the second input up front and skips the files of the first input whose Bloom
+ * filters(see {@link BloomIndexJob}) contain none of them.
+ * <p/>
+ * {@code --broadcast join} joins two inputs map-side without a shuffle: the join input is shipped
+ * through the distributed cache and every mapper loads it into a {@link BytesMultiMap} keyed by
+ * the join columns, so the join input must be small enough to fit in the memory of a mapper.
+ * <p/>
+ * {@code --skewJoin} samples the keys of the first input and splits each heavy key over several
+ * reducers(see {@link SkewedKeys}), for the inner and left joins.
+ * <p/>
+ * {@code --semiJoin} runs a job first to build a Bloom filter over the keys of each input but the
+ * first, and drops the records of the first input whose key is not in every filter before the
+ * shuffle, for the inner join. The counters tell how many records were dropped and how many passed
+ * the filters without a match(false positives).
+ * <p/>
+ * {@code --sortMergeJoin} joins map-side without a shuffle the inputs written by jobs with the
+ * same partitioner and number of reducers, sorted by key: see {@link SortMergeJoinInputFormat}.
+ *
  * @author Younggue Bae
  */
 public class JoinJob extends AbstractJob {
 
-	@SuppressWarnings("unused")
+	private static final String INPUTS = "join.inputs";
+	private static final String INPUT_PREFIX = "join.input.";
+	private static final String WHOLE_RECORD = "*";
+	private static final String BROADCAST_FILES = "broadcast.files";
+	private static final String BROADCAST_LINK_PREFIX = "join-";
+	private static final String JOIN_BUFFER_SIZE = "joinBufferSize";
+	private static final String JOIN_COUNTER_GROUP = "JoinJob";
+	private static final String SEMI_JOIN = "semiJoin";
+	private static final String SEMI_JOIN_KEYS = "semiJoin.keys";
+	private static final String SEMI_JOIN_FPP = "semiJoin.fpp";
+	private static final String SEMI_JOIN_LINK = "semijoin-filters";
+
 	@Override
 	public int run(String[] args) throws Exception {
-		addOption("inputBase", "i", "Base input path to join.", true);
-		addOption("inputJoin", "j", "Input path to join with main input.", true);
+		addOption("inputBase", "i", "Base input path to join.", false);
+		addOption("inputJoin", "j", "Input path to join with main input.", false);
+		addOption("inputs", null, "The input paths to join, separated by ';'(comma delimited paths each, the first is the largest)", false);
 		addOption("output", "o", "The directory pathname for output.", true);
-		addOption("baseKeyColumns", null, "The Key column indexes of base input.(comma delimiter)", true);
-		addOption("joinKeyColumns", null, "The Key column indexes of join input.(comma delimiter)", true);
-		addOption("joinValueColumns", null, "The value column indexes of join input.(comma delimiter)", true);
+		addOption("baseKeyColumns", null, "The Key column indexes of base input.(comma delimiter)", false);
+		addOption("joinKeyColumns", null, "The Key column indexes of join input.(comma delimiter)", false);
+		addOption("joinValueColumns", null, "The value column indexes of join input.(comma delimiter)", false);
+		addOption("keyColumns", null, "The key column indexes of each input of --inputs, separated by ';'", false);
+		addOption("valueColumns", null, "The value column indexes of each input of --inputs, separated by ';'(* for the whole record)", false);
 		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
+		addOption("joinType", null, "The join type.(inner, left, right or full, The default is left)", false);
+		addOption("bloomDir", null, "The Bloom filter directory built by BloomIndexJob, to skip the base files without a join key(inner join on a single column only)", false);
+		addOption("broadcast", null, "The input to load into the memory of every mapper for a map-side join.(join)", false);
+		addOption("joinBufferSize", null, "The memory in MB for the join values of a key in a reducer, beyond which they spill to disk(The default is 64)", false);
+		addFlag("sortMergeJoin", null, "Join the co-partitioned inputs sorted by key map-side, part file by part file");
+		addOption("maxBroadcastSize", null, "The maximum size in MB of the broadcast input(The default is 512)", false);
+		addFlag("skewJoin", null, "Split the heavy keys of the first input over several reducers(inner or left join)");
+		addOption("skewThreshold", null, "The share of the sampled keys from which a key is heavy(The default is half a reducer's share)", false);
+		addOption("saltBuckets", null, "The number of reducers to split a heavy key over(The default is the number of reducers, up to 256)", false);
+		addOption("samples", null, "The number of lines to sample for --skewJoin(The default is 10000)", false);
+		addOption("sampleSplits", null, "The number of splits to sample for --skewJoin(The default is 10)", false);
+		addFlag("semiJoin", null, "Drop the records of the first input whose key is not in the Bloom filters of the other inputs before the shuffle(inner join)");
+		addOption("semiJoinKeys", null, "The expected number of distinct keys of an input for --semiJoin(The default is 1000000)", false);
+		addOption("fpp", null, "The false positive probability of the --semiJoin Bloom filters(The default is 0.01)", false);
 
 		parseArguments(args);
 
-		String inputBase = getOption("inputBase");
-		String inputJoin = getOption("inputJoin");
+		String[] inputs;
+		String[] keyColumns;
+		String[] valueColumns;
+		if (hasOption("inputs")) {
+			inputs = splitSpec(getOption("inputs"));
+			keyColumns = splitSpec(getOption("keyColumns"));
+			valueColumns = splitSpec(getOption("valueColumns"));
+			if (inputs.length < 2 || keyColumns.length != inputs.length || valueColumns.length != inputs.length) {
+				throw new IllegalArgumentException("--keyColumns and --valueColumns need a spec for each of two or more --inputs");
+			}
+			if (inputs.length > Byte.MAX_VALUE) {
+				throw new IllegalArgumentException("Too many inputs to tag: " + inputs.length);
+			}
+		}
+		else {
+			if (getOption("inputBase") == null || getOption("inputJoin") == null || getOption("baseKeyColumns") == null
+					|| getOption("joinKeyColumns") == null || getOption("joinValueColumns") == null) {
+				throw new IllegalArgumentException("--inputs or --inputBase, --inputJoin and their key and value columns are required");
+			}
+			inputs = new String[] {getOption("inputBase"), getOption("inputJoin")};
+			keyColumns = new String[] {getOption("baseKeyColumns"), getOption("joinKeyColumns")};
+			valueColumns = new String[] {WHOLE_RECORD, getOption("joinValueColumns")};
+		}
 		String output = getOption("output");
-		String[] baseKeyColumns = getOption("baseKeyColumns").split(",");
-		String[] joinKeyColumns = getOption("joinKeyColumns").split(",");
-		String[] joinValueColumns = getOption("joinValueColumns").split(",");
-		String delimiter = getOption("delimiter");
-		
+		String delimiter = getOption("delimiter", "\\t");
+		String joinType = getOption("joinType", "left");
+		if (!Arrays.asList("inner", "left", "right", "full").contains(joinType)) {
+			throw new IllegalArgumentException("Unknown join type: " + joinType);
+		}
+		String broadcast = getOption("broadcast");
+		if (broadcast != null && !broadcast.equals("join")) {
+			throw new IllegalArgumentException("Only the join input can be broadcast: " + broadcast);
+		}
+		if (broadcast != null && (inputs.length != 2 || !(joinType.equals("left") || joinType.equals("inner")))) {
+			throw new IllegalArgumentException("--broadcast joins two inputs with the left or inner join type only");
+		}
+		boolean sortMergeJoin = hasOption("sortMergeJoin");
+		if (sortMergeJoin && broadcast != null) {
+			throw new IllegalArgumentException("--sortMergeJoin and --broadcast can not be used together");
+		}
+		boolean skewJoin = hasOption("skewJoin");
+		if (skewJoin && (broadcast != null || sortMergeJoin)) {
+			throw new IllegalArgumentException("--skewJoin salts the keys of a reduce-side join only");
+		}
+		if (skewJoin && !(joinType.equals("left") || joinType.equals("inner"))) {
+			// a salt without records of the first input could not tell whether another salt has some
+			throw new IllegalArgumentException("--skewJoin supports the left or inner join type only");
+		}
+		boolean semiJoin = hasOption("semiJoin");
+		if (semiJoin && (broadcast != null || sortMergeJoin || !joinType.equals("inner"))) {
+			throw new IllegalArgumentException("--semiJoin filters the first input of a reduce-side inner join only");
+		}
+		long maxBroadcastSize = Long.parseLong(getOption("maxBroadcastSize", "512")) * 1024 * 1024;
+
     if (delimiter.equals("\\t")) {
     	delimiter = "\t";
     }
 
 		Configuration conf = getConf();
 
-		Path inputBasePath = new Path(inputBase);
-		Path inputJoinPath = new Path(inputJoin);
 		Path outputPath = new Path(output);
 
-		conf.setStrings("baseKeyColumns", baseKeyColumns);
-		conf.setStrings("joinKeyColumns", joinKeyColumns);
-		conf.setStrings("joinValueColumns", joinValueColumns);
-		conf.setInt("joinValueColumnSize", joinValueColumns.length);
-		conf.set("inputBaseFile", inputBasePath.toString());
-		conf.set("inputJoinFile", inputJoinPath.toString());
+		setInputs(conf, inputs, keyColumns, valueColumns);
 		conf.set("delimiter", delimiter);
+		conf.set("joinType", joinType);
+		conf.setLong(JOIN_BUFFER_SIZE, Long.parseLong(getOption("joinBufferSize", "64")));
+		conf.setLong(SEMI_JOIN_KEYS, Long.parseLong(getOption("semiJoinKeys", "1000000")));
+		conf.setFloat(SEMI_JOIN_FPP, Float.parseFloat(getOption("fpp", "0.01")));
 
 		//Job job = new Job(conf);
 		Job job = Job.getInstance(conf);
 
-		String srtInputBase = inputBase;
-		if (inputBase.length() > 30) {
-			srtInputBase = "..." + inputBase.substring(inputBase.length() - 30);
-		}
-		String srtInputJoin = inputJoin;
-		if (inputJoin.length() > 30) {
-			srtInputJoin = "..." + inputJoin.substring(inputJoin.length() - 30);
-		}
-		//job.setJobName("Join on " + "(" + srtInputBase + ") and (" + srtInputJoin + ")");
-		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, JoinMapper.class, Reducer.class));
 		job.setJarByClass(JoinJob.class);
-		job.setMapOutputKeyClass(TextPairWritable.class);
-		job.setMapOutputValueClass(Text.class);
 		job.setOutputKeyClass(NullWritable.class);
 		job.setOutputValueClass(Text.class);
-		job.setMapperClass(JoinMapper.class);
-		job.setPartitionerClass(JoinKeyPartitioner.class);
-		job.setGroupingComparatorClass(TextPairWritable.FirstComparator.class);
-		job.setReducerClass(JoinReducer.class);
 		job.setOutputFormatClass(TextOutputFormat.class);
+		if (broadcast != null) {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, BroadcastJoinMapper.class, Reducer.class));
+			job.setMapperClass(BroadcastJoinMapper.class);
+			job.setNumReduceTasks(0);
+			addBroadcastFiles(job, inputs[1], maxBroadcastSize);
+		}
+		else if (sortMergeJoin) {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SortMergeJoinMapper.class, Reducer.class));
+			job.setInputFormatClass(SortMergeJoinInputFormat.class);
+			job.setMapperClass(SortMergeJoinMapper.class);
+			job.setNumReduceTasks(0);
+		}
+		else {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, JoinMapper.class, Reducer.class));
+			job.setMapOutputKeyClass(JoinKeyWritable.class);
+			job.setMapOutputValueClass(Text.class);
+			job.setMapperClass(JoinMapper.class);
+			job.setPartitionerClass(JoinKeyPartitioner.class);
+			job.setGroupingComparatorClass(JoinKeyWritable.KeyComparator.class);
+			job.setReducerClass(JoinReducer.class);
+			if (skewJoin) {
+				double skewThreshold = Double.parseDouble(getOption("skewThreshold", "-1"));
+				int saltBuckets = Integer.parseInt(getOption("saltBuckets", "-1"));
+				int numSamples = Integer.parseInt(getOption("samples", "10000"));
+				int sampleSplits = Integer.parseInt(getOption("sampleSplits", "10"));
+				setHeavyKeys(job, inputs[0], toIndexes(keyColumns[0].split(",")), delimiter,
+						new LineSampler(numSamples, sampleSplits), skewThreshold, saltBuckets);
+			}
+		}
+
+		Path semiJoinDir = new Path(output + "_semijoin");
+		if (semiJoin) {
+			Path filterFile = buildSemiJoinFilters(conf, inputs, semiJoinDir);
+			job.addCacheFile(URI.create(filterFile.toUri().toString() + "#" + SEMI_JOIN_LINK));
+			job.getConfiguration().setBoolean(SEMI_JOIN, true);
+		}
+
+		String bloomDir = getOption("bloomDir");
+		if (bloomDir != null && sortMergeJoin) {
+			logger.warn("Bloom filters are not used(sort-merge join reads every part file)");
+		}
+		else if (bloomDir != null) {
+			String[] baseKeyColumns = keyColumns[0].split(",");
+			String[] joinKeyColumns = keyColumns[1].split(",");
+			if (joinType.equals("inner") && baseKeyColumns.length == 1 && joinKeyColumns.length == 1) {
+				Set<String> joinKeys = collectKeys(inputs[1], Integer.parseInt(joinKeyColumns[0].trim()), delimiter,
+						BloomFilterSkippingInputFormat.MAX_REQUIRED_VALUES, conf);
+				if (joinKeys != null) {
+					BloomFilterSkippingInputFormat.setBloomDir(job, new Path(bloomDir));
+					BloomFilterSkippingInputFormat.addRequiredValues(job, Integer.parseInt(baseKeyColumns[0].trim()), joinKeys);
+					BloomFilterSkippingInputFormat.setSkipPaths(job, toPaths(inputs[0]));
+					logger.info("join keys == " + joinKeys.size());
+				}
+				else {
+					logger.warn("Bloom filters are not used(too many join keys)");
+				}
+			}
+			else {
+				logger.warn("Bloom filters are not used(inner join on a single column only)");
+			}
+		}
 
-		FileInputFormat.addInputPath(job, inputBasePath);
-		FileInputFormat.addInputPath(job, inputJoinPath);
+		FileInputFormat.addInputPaths(job, inputs[0]);
+		if (broadcast == null && !sortMergeJoin) {
+			for (int i = 1; i < inputs.length; i++) {
+				FileInputFormat.addInputPaths(job, inputs[i]);
+			}
+		}
 		FileOutputFormat.setOutputPath(job, outputPath);
 		HadoopUtil.delete(conf, outputPath);
 
 		job.waitForCompletion(true);
 
+		if (semiJoin) {
+			Counters counters = job.getCounters();
+			long dropped = counters.findCounter(JOIN_COUNTER_GROUP, "SEMIJOIN_DROPPED_RECORDS").getValue();
+			long falsePositives = counters.findCounter(JOIN_COUNTER_GROUP, "SEMIJOIN_FALSE_POSITIVES").getValue();
+			logger.info("semi-join dropped records == " + dropped + ", false positives == " + falsePositives
+					+ ", false positive rate == " + (dropped + falsePositives > 0 ? (double) falsePositives / (dropped + falsePositives) : 0));
+			HadoopUtil.delete(conf, semiJoinDir);
+		}
+
 		return 0;
 	}
 
@@ -106,16 +285,302 @@ public class JoinJob extends AbstractJob {
 		ToolRunner.run(new Configuration(), new JoinJob(), args);
 	}
 
+	/**
+	 * Runs a job to build a Bloom filter over the keys of each input but the first.
+	 *
+	 * @return the sequence file of the filters by input.
+	 */
+	private Path buildSemiJoinFilters(Configuration conf, String[] inputs, Path filterDir) throws Exception {
+		Job job = Job.getInstance(conf);
+		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SemiJoinKeyMapper.class, SemiJoinFilterReducer.class));
+		job.setJarByClass(JoinJob.class);
+		job.setMapperClass(SemiJoinKeyMapper.class);
+		job.setCombinerClass(SemiJoinFilterReducer.class);
+		job.setReducerClass(SemiJoinFilterReducer.class);
+		job.setNumReduceTasks(1);
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(BloomFilter.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+		for (int i = 1; i < inputs.length; i++) {
+			FileInputFormat.addInputPaths(job, inputs[i]);
+		}
+		FileOutputFormat.setOutputPath(job, filterDir);
+		HadoopUtil.delete(conf, filterDir);
+
+		if (!job.waitForCompletion(true)) {
+			throw new IOException("Failed in building the semi-join Bloom filters!");
+		}
+		return new Path(filterDir, "part-r-00000");
+	}
+
+	/**
+	 * Samples the keys of the first input and sets the heavy ones to be salted.
+	 *
+	 * @param skewThreshold the share of the sampled keys from which a key is heavy, or a negative
+	 * number for half the share of a reducer.
+	 * @param saltBuckets the number of salts of a heavy key, or a negative number for the number of
+	 * reducers.
+	 */
+	private void setHeavyKeys(Job job, String input, int[] keyColumns, String delimiter, LineSampler sampler,
+			double skewThreshold, int saltBuckets) throws IOException, InterruptedException {
+		int numReducers = job.getNumReduceTasks();
+		if (numReducers < 2) {
+			logger.warn("Heavy keys are not salted(one reducer)");
+			return;
+		}
+
+		Job sampleJob = Job.getInstance(job.getConfiguration());
+		FileInputFormat.addInputPaths(sampleJob, input);
+		DelimitedRecord record = new DelimitedRecord(delimiter);
+		List<Text> keys = new ArrayList<Text>();
+		for (Text line : sampler.sample(sampleJob)) {
+			record.set(line);
+			Text key = new Text();
+			try {
+				// the key of a map output
+				record.encodeTo(keyColumns, key);
+			} catch (RuntimeException e) {
+				continue;
+			}
+			keys.add(key);
+		}
+
+		List<Text> heavyKeys = SkewedKeys.findHeavyKeys(keys, skewThreshold < 0 ? 0.5 / numReducers : skewThreshold);
+		logger.info("sampled keys == " + keys.size() + ", heavy keys == " + heavyKeys.size());
+		if (!heavyKeys.isEmpty()) {
+			SkewedKeys.setHeavyKeys(job.getConfiguration(), heavyKeys,
+					saltBuckets < 0 ? Math.min(numReducers, SkewedKeys.MAX_SALT_BUCKETS) : saltBuckets);
+		}
+	}
+
+	/**
+	 * Adds the files of the join input to the distributed cache, linked as {@code join-<i>}.
+	 *
+	 * @throws IOException if the files are larger than {@code maxSize} bytes in total.
+	 */
+	private void addBroadcastFiles(Job job, String input, long maxSize) throws IOException {
+		Configuration conf = job.getConfiguration();
+		List<FileStatus> files = IndexBuildJob.listFiles(input.split(","), conf);
+
+		long size = 0;
+		for (FileStatus file : files) {
+			size += file.getLen();
+		}
+		if (size > maxSize) {
+			throw new IOException("The join input is too large to broadcast(" + size + " > " + maxSize
+					+ " bytes), run without --broadcast or raise --maxBroadcastSize");
+		}
+
+		for (int i = 0; i < files.size(); i++) {
+			URI uri = files.get(i).getPath().toUri();
+			job.addCacheFile(URI.create(uri.toString() + "#" + BROADCAST_LINK_PREFIX + i));
+		}
+		conf.setInt(BROADCAST_FILES, files.size());
+		logger.info("broadcast files == " + files.size() + ", bytes == " + size);
+	}
+
+	private static URI findCacheFile(URI[] cacheFiles, String link) throws IOException {
+		if (cacheFiles != null) {
+			for (URI uri : cacheFiles) {
+				if (link.equals(uri.getFragment())) {
+					return uri;
+				}
+			}
+		}
+		throw new IOException("The file is not in the distributed cache: " + link);
+	}
+
+	/**
+	 * @return the local link of the cache file if the task runs in a directory with the links, or
+	 * the cached file itself.
+	 */
+	private static Path getCacheFilePath(URI uri) {
+		File link = new File(uri.getFragment());
+		if (link.exists()) {
+			return new Path(link.getAbsoluteFile().toURI());
+		}
+		return new Path(uri.getScheme(), uri.getAuthority(), uri.getPath());
+	}
+
+	/**
+	 * @return the join value of a base record without a match: a blank for each join value column.
+	 */
+	static String emptyJoinValue(int joinValueColumnSize, String delimiter) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < joinValueColumnSize; i++) {
+			if (i > 0) {
+				sb.append(delimiter);
+			}
+			sb.append(" ");
+		}
+		return sb.toString();
+	}
+
+	private static String[] splitSpec(String spec) {
+		if (spec == null) {
+			return new String[0];
+		}
+		String[] specs = spec.split(";");
+		for (int i = 0; i < specs.length; i++) {
+			specs[i] = specs[i].trim();
+		}
+		return specs;
+	}
+
+	private static Path[] toPaths(String input) {
+		String[] paths = input.split(",");
+		Path[] result = new Path[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			result[i] = new Path(paths[i].trim());
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the qualified paths, key columns and value columns of each input.
+	 */
+	private static void setInputs(Configuration conf, String[] inputs, String[] keyColumns, String[] valueColumns)
+			throws IOException {
+		conf.setInt(INPUTS, inputs.length);
+		for (int i = 0; i < inputs.length; i++) {
+			Path[] paths = toPaths(inputs[i]);
+			String[] qualified = new String[paths.length];
+			for (int p = 0; p < paths.length; p++) {
+				qualified[p] = paths[p].getFileSystem(conf).makeQualified(paths[p]).toString();
+			}
+			conf.setStrings(INPUT_PREFIX + i + ".paths", qualified);
+			conf.set(INPUT_PREFIX + i + ".keyColumns", keyColumns[i]);
+			conf.set(INPUT_PREFIX + i + ".valueColumns", valueColumns[i]);
+		}
+	}
+
+	static int getNumInputs(Configuration conf) {
+		return conf.getInt(INPUTS, 0);
+	}
+
+	/**
+	 * @return the qualified paths of the input.
+	 */
+	static String[] getInputPaths(Configuration conf, int input) {
+		return conf.getStrings(INPUT_PREFIX + input + ".paths");
+	}
+
+	static int[] getKeyColumns(Configuration conf, int input) {
+		return toIndexes(conf.get(INPUT_PREFIX + input + ".keyColumns").split(","));
+	}
+
+	/**
+	 * @return the value columns of the input, or null for the whole record.
+	 */
+	static int[] getValueColumns(Configuration conf, int input) {
+		String columns = conf.get(INPUT_PREFIX + input + ".valueColumns");
+		return columns.equals(WHOLE_RECORD) ? null : toIndexes(columns.split(","));
+	}
+
+	/**
+	 * @return the input whose paths contain the file, the longest path if several do.
+	 * @throws IOException if no input contains the file.
+	 */
+	static int getInput(Configuration conf, Path file) throws IOException {
+		String name = file.toString();
+		int input = -1;
+		int longest = -1;
+		for (int i = 0; i < getNumInputs(conf); i++) {
+			for (String path : getInputPaths(conf, i)) {
+				boolean contains = name.equals(path) || name.startsWith(path.endsWith("/") ? path : path + "/");
+				if (contains && path.length() > longest) {
+					input = i;
+					longest = path.length();
+				}
+			}
+		}
+		if (input < 0) {
+			throw new IOException("Failed in identifying join input tag from input files: " + name);
+		}
+		return input;
+	}
+
+	/**
+	 * @return the value of an input without a match: a blank for each value column, or one blank
+	 * for the whole record.
+	 */
+	static String emptyValue(Configuration conf, int input, String delimiter) {
+		int[] valueColumns = getValueColumns(conf, input);
+		return emptyJoinValue(valueColumns == null ? 1 : valueColumns.length, delimiter);
+	}
+
+	/**
+	 * The tag of an input sorts the second and later inputs first in order, and the first input,
+	 * streamed by the reducer, last.
+	 */
+	static byte toTag(int input, int numInputs) {
+		return (byte) ((input + numInputs - 1) % numInputs);
+	}
+
+	static int toInput(byte tag, int numInputs) {
+		return (tag + 1) % numInputs;
+	}
+
+	private static int[] toIndexes(String[] columns) {
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			indexes[i] = Integer.parseInt(columns[i].trim());
+		}
+		return indexes;
+	}
+
+	/**
+	 * Reads the distinct values of the key column of the input.
+	 *
+	 * @return the values, or null if there are more than {@code maxKeys}.
+	 */
+	static Set<String> collectKeys(String input, int keyColumn, String delimiter, int maxKeys, Configuration conf)
+			throws IOException {
+		CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+		DelimitedRecord record = new DelimitedRecord(delimiter);
+		Text line = new Text();
+		Set<String> keys = new HashSet<String>();
+
+		for (FileStatus file : IndexBuildJob.listFiles(input.split(","), conf)) {
+			InputStream in = HadoopUtil.openStream(file.getPath(), conf);
+			CompressionCodec codec = codecs.getCodec(file.getPath());
+			if (codec != null) {
+				in = codec.createInputStream(in);
+			}
+			FileLineIterator it = new FileLineIterator(in);
+			try {
+				while (it.hasNext()) {
+					line.set(it.next());
+					record.set(line);
+					if (keyColumn < record.size() && keys.add(record.getString(keyColumn)) && keys.size() > maxKeys) {
+						return null;
+					}
+				}
+			} finally {
+				it.close();
+			}
+		}
+		return keys;
+	}
+
 	/**
 	 * This class is a mapper to join.
 	 */
-	static class JoinMapper extends Mapper<LongWritable, Text, TextPairWritable, Text> {
+	static class JoinMapper extends Mapper<LongWritable, Text, JoinKeyWritable, Text> {
+
+		private byte[] delimiter;
+		private DelimitedRecord record;
+		private int[] keyColumns;
+		private int[] valueColumns;
+		private int input;
+		private SkewedKeys skewedKeys;
+		private List<BloomFilter> semiJoinFilters;
 
-		private String delimiter = "\t";
-		private String inputTag;
-		private String[] baseKeyColumns;
-		private String[] joinKeyColumns;
-		private String[] joinValueColumns;
+		private final Text joinKey = new Text();
+		private final Text outKeyBytes = new Text();
+		private final JoinKeyWritable outKey = new JoinKeyWritable(outKeyBytes);
+		private final Text outValue = new Text();
 
 		@Override
 		public void setup(Context context) throws IOException, InterruptedException {
@@ -124,183 +589,516 @@ public class JoinJob extends AbstractJob {
 			Configuration conf = context.getConfiguration();
 
 			FileSplit fileSplit = (FileSplit) context.getInputSplit();
-			String currentInputFile = fileSplit.getPath().toString();
-
-			delimiter = conf.get("delimiter", "\t");
-
-			String inputBaseFile = conf.get("inputBaseFile");
-			String inputJoinFile = conf.get("inputJoinFile");
-			baseKeyColumns = conf.getStrings("baseKeyColumns");
-			joinKeyColumns = conf.getStrings("joinKeyColumns");
-			joinValueColumns = conf.getStrings("joinValueColumns");
-
-			System.out.println("currentInputFile == " + currentInputFile);
-			System.out.println("inputBaseFile == " + inputBaseFile);
-			System.out.println("inputJoinFile == " + inputJoinFile);
-			System.out.println("baseKeyColumns == " + Arrays.asList(baseKeyColumns));
-			System.out.println("joinKeyColumns == " + Arrays.asList(joinKeyColumns));
-			System.out.println("joinValueColumns == " + Arrays.asList(joinValueColumns));
-
-			if (currentInputFile.indexOf(inputBaseFile) >= 0) {
-				inputTag = "BASE";
-			} else if (currentInputFile.indexOf(inputJoinFile) >= 0) {
-				inputTag = "JOIN";
-			} else {
-				throw new IOException("Failed in identifying join input tag from input files!");
-			}
-		}
-
-		private String makeKey(String record) {
-			StringBuffer key = new StringBuffer();
-
-			String[] field = record.split(delimiter);
-			if (inputTag.equals("BASE")) {
-				for (int i = 0; i < baseKeyColumns.length; i++) {
-					String column = baseKeyColumns[i];
-					int index = Integer.parseInt(column);
-					if (i < baseKeyColumns.length - 1) {
-						key.append(field[index]).append(delimiter);
-					}
-					else {
-						key.append(field[index]);
+
+			String strDelimiter = conf.get("delimiter", "\t");
+			delimiter = strDelimiter.getBytes("utf-8");
+			record = new DelimitedRecord(strDelimiter);
+
+			input = getInput(conf, fileSplit.getPath());
+			keyColumns = getKeyColumns(conf, input);
+			valueColumns = getValueColumns(conf, input);
+			outKey.setTag(toTag(input, getNumInputs(conf)));
+			if (SkewedKeys.isSkewed(conf)) {
+				skewedKeys = new SkewedKeys(conf);
+			}
+			if (input == 0 && conf.getBoolean(SEMI_JOIN, false)) {
+				semiJoinFilters = readSemiJoinFilters(context);
+			}
+
+			System.out.println("currentInputFile == " + fileSplit.getPath());
+			System.out.println("input == " + input);
+			System.out.println("keyColumns == " + Arrays.toString(keyColumns));
+			System.out.println("valueColumns == " + (valueColumns == null ? WHOLE_RECORD : Arrays.toString(valueColumns)));
+		}
+
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			record.set(value);
+
+			record.encodeTo(keyColumns, outKeyBytes);
+			if (semiJoinFilters != null) {
+				Key filterKey = BloomFilterUtil.toKey(outKeyBytes.getBytes(), 0, outKeyBytes.getLength());
+				for (BloomFilter filter : semiJoinFilters) {
+					if (!filter.membershipTest(filterKey)) {
+						context.getCounter(JOIN_COUNTER_GROUP, "SEMIJOIN_DROPPED_RECORDS").increment(1);
+						return;
 					}
 				}
-			} else if (inputTag.equals("JOIN")) {
-				for (int i = 0; i < joinKeyColumns.length; i++) {
-					String column = joinKeyColumns[i];
-					int index = Integer.parseInt(column);
-					if (i < joinKeyColumns.length - 1) {
-						key.append(field[index]).append(delimiter);
-					}
-					else {
-						key.append(field[index]);
-					}
+			}
+			// the whole record as is, or the byte slices of the value columns
+			Text joinValue = value;
+			if (valueColumns != null) {
+				record.copyTo(valueColumns, delimiter, outValue);
+				joinValue = outValue;
+			}
+
+			if (skewedKeys == null || !skewedKeys.isHeavy(outKeyBytes)) {
+				context.write(outKey, joinValue);
+			}
+			else if (input == 0) {
+				// the large input: to one of the salts
+				skewedKeys.salt(outKeyBytes);
+				context.write(outKey, joinValue);
+				context.getCounter(JOIN_COUNTER_GROUP, "SALTED_RECORDS").increment(1);
+			}
+			else {
+				// the small inputs: to every salt
+				joinKey.set(outKeyBytes);
+				for (int salt = 0; salt < skewedKeys.getSaltBuckets(); salt++) {
+					outKeyBytes.set(joinKey);
+					skewedKeys.salt(outKeyBytes, salt);
+					context.write(outKey, joinValue);
 				}
+				context.getCounter(JOIN_COUNTER_GROUP, "REPLICATED_RECORDS").increment(skewedKeys.getSaltBuckets());
 			}
+		}
+	}
 
-			return key.toString();
+	/**
+	 * @return the Bloom filters of the inputs but the first, from the distributed cache.
+	 */
+	private static List<BloomFilter> readSemiJoinFilters(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+		Path filterFile = getCacheFilePath(findCacheFile(context.getCacheFiles(), SEMI_JOIN_LINK));
+		List<BloomFilter> filters = new ArrayList<BloomFilter>();
+		SequenceFile.Reader reader = new SequenceFile.Reader(context.getConfiguration(), SequenceFile.Reader.file(filterFile));
+		try {
+			IntWritable input = new IntWritable();
+			BloomFilter filter = new BloomFilter();
+			while (reader.next(input, filter)) {
+				filters.add(filter);
+				filter = new BloomFilter();
+			}
+		} finally {
+			reader.close();
 		}
+		System.out.println("semiJoinFilters == " + filters.size());
+		return filters;
+	}
 
-		private String makeValue(String record) {
-			StringBuffer value = new StringBuffer();
+	/**
+	 * This class is a mapper to add the keys of an input to a Bloom filter, written at the end of
+	 * the task.
+	 */
+	static class SemiJoinKeyMapper extends Mapper<LongWritable, Text, IntWritable, BloomFilter> {
 
-			String[] field = record.split(delimiter);
+		private byte[] delimiter;
+		private DelimitedRecord record;
+		private int[] keyColumns;
+		private int input;
+		private BloomFilter filter;
 
-			if (inputTag.equals("BASE")) {
-				value.append(record);
-			} else if (inputTag.equals("JOIN")) {
-				for (int i = 0; i < joinValueColumns.length; i++) {
-					String column = joinValueColumns[i];
-					int index = Integer.parseInt(column);
-					
-					if (i < joinValueColumns.length - 1) {
-						value.append(field[index]).append(delimiter);
-					}
-					else {
-						value.append(field[index]);
-					}
-				}
-			}
+		private final Text joinKey = new Text();
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			Configuration conf = context.getConfiguration();
 
-			return value.toString();
+			String strDelimiter = conf.get("delimiter", "\t");
+			delimiter = strDelimiter.getBytes("utf-8");
+			record = new DelimitedRecord(strDelimiter);
+			input = getInput(conf, ((FileSplit) context.getInputSplit()).getPath());
+			keyColumns = getKeyColumns(conf, input);
+			filter = newSemiJoinFilter(conf);
 		}
-		
+
 		@Override
 		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-			String record = value.toString();
+			record.set(value);
+			record.encodeTo(keyColumns, joinKey);
+			filter.add(BloomFilterUtil.toKey(joinKey.getBytes(), 0, joinKey.getLength()));
+		}
 
-			String strKey = makeKey(record);
-			String strValue = makeValue(record);
-			
-			int order = 0;
-			if (inputTag.equals("JOIN")) {
-				order = 1;
-				
-				//System.out.println("join == " + strValue);
-			}
-			else if (inputTag.equals("BASE")) {
-				order = 2;
+		@Override
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			context.write(new IntWritable(input), filter);
+			super.cleanup(context);
+		}
+	}
+
+	/**
+	 * This class is a reducer(and combiner) to merge the Bloom filters of an input.
+	 */
+	static class SemiJoinFilterReducer extends Reducer<IntWritable, BloomFilter, IntWritable, BloomFilter> {
+
+		@Override
+		protected void reduce(IntWritable key, Iterable<BloomFilter> values, Context context) throws IOException, InterruptedException {
+			BloomFilter merged = newSemiJoinFilter(context.getConfiguration());
+			for (BloomFilter filter : values) {
+				merged.or(filter);
 			}
-			context.write(new TextPairWritable(strKey, order + "_" + inputTag), new Text(strValue));
+			context.write(key, merged);
 		}
 	}
 
+	private static BloomFilter newSemiJoinFilter(Configuration conf) {
+		return BloomFilterUtil.newBloomFilter(conf.getLong(SEMI_JOIN_KEYS, 1000000), conf.getFloat(SEMI_JOIN_FPP, 0.01f));
+	}
+
 	/**
 	 * This class is a reducer to join.
+	 * <p/>
+	 * The values of a key arrive input by input in the order of their tags, the first input last,
+	 * and are joined by a {@link JoinGroup}.
 	 */
-	static class JoinReducer extends Reducer<TextPairWritable, Text, NullWritable, Text> {
+	static class JoinReducer extends Reducer<JoinKeyWritable, Text, NullWritable, Text> {
 
-		private String delimiter = "\t";
-		private String emptyJoinValue;
+		private int numInputs;
+		private boolean semiJoin;
+		private JoinGroup group;
 
 		@Override
 		public void setup(Context context) throws IOException, InterruptedException {
 			super.setup(context);
 
 			Configuration conf = context.getConfiguration();
+			numInputs = getNumInputs(conf);
+			semiJoin = conf.getBoolean(SEMI_JOIN, false);
+			group = new JoinGroup(conf);
+		}
 
-			delimiter = conf.get("delimiter", "\t");
-			int joinValueColumnSize = conf.getInt("joinValueColumnSize", 0);
-			
-			StringBuffer sbEmptyJoinValue = new StringBuffer();
-			for (int i = 0; i < joinValueColumnSize; i++) {
-				if (i < joinValueColumnSize - 1) {
-					sbEmptyJoinValue.append(" ").append(delimiter);
-				}
-				else {
-					sbEmptyJoinValue.append(" ");
+		@Override
+		protected void reduce(JoinKeyWritable key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+			group.start();
+
+			// the tag of the key changes with each value
+			Iterator<Text> it = values.iterator();
+			while (it.hasNext()) {
+				Text val = it.next();
+				if (!group.add(toInput(key.getTag(), numInputs), val, context)) {
+					if (semiJoin) {
+						// the records of the first input, which passed the Bloom filters without a match
+						long falsePositives = 1;
+						for (; it.hasNext(); it.next()) {
+							falsePositives++;
+						}
+						context.getCounter(JOIN_COUNTER_GROUP, "SEMIJOIN_FALSE_POSITIVES").increment(falsePositives);
+					}
+					return;
 				}
 			}
-			emptyJoinValue = sbEmptyJoinValue.toString();
-			
-			System.out.println("joinValueColumnSize == " + joinValueColumnSize);
+			group.end(context);
 		}
-		
+
 		@Override
-		protected void reduce(TextPairWritable key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
-			List<String> baseValueList = new ArrayList<String>();
-			Set<String> joinValueList = new HashSet<String>();
-			
-			for (Text val : values) {
-				String inputTag = key.getSecond().toString();
-				
-				String line = val.toString();
-				
-				// identify the record source
-				if (inputTag.equals("1_JOIN")) {
-					joinValueList.add(line);
-					//System.out.println("join == " + key.toString() + " => " + line);
-				} else if (inputTag.equals("2_BASE")) {
-					baseValueList.add(line);
-					//System.out.println("base == " + key.toString() + " => " + line);
+		protected void cleanup(Context context) throws IOException, InterruptedException {
+			group.close();
+			super.cleanup(context);
+		}
+	}
+
+	/**
+	 * This class is a mapper to join the co-partitioned, sorted inputs read by
+	 * {@link SortMergeJoinInputFormat}, whose records arrive grouped by key like those of a reducer.
+	 */
+	static class SortMergeJoinMapper extends Mapper<JoinKeyWritable, Text, NullWritable, Text> {
+
+		@Override
+		public void run(Context context) throws IOException, InterruptedException {
+			setup(context);
+
+			Configuration conf = context.getConfiguration();
+			int numInputs = getNumInputs(conf);
+			JoinGroup group = new JoinGroup(conf);
+			Text groupKey = new Text();
+			boolean started = false;
+			boolean joining = false;
+			try {
+				while (context.nextKeyValue()) {
+					JoinKeyWritable key = context.getCurrentKey();
+					if (!started || !key.getKey().equals(groupKey)) {
+						if (joining) {
+							group.end(context);
+						}
+						group.start();
+						groupKey.set(key.getKey());
+						started = true;
+						joining = true;
+					}
+					if (joining) {
+						joining = group.add(toInput(key.getTag(), numInputs), context.getCurrentValue(), context);
+					}
+				}
+				if (joining) {
+					group.end(context);
+				}
+			} finally {
+				group.close();
+				cleanup(context);
+			}
+		}
+	}
+
+	/**
+	 * This class joins the values of one key, given input by input: those of the second and later
+	 * inputs first, then those of the first input.
+	 * <p/>
+	 * Only the values of the other inputs are buffered, spilling to local disk past
+	 * {@code joinBufferSize} MB each, and the records of the first input are joined as they stream
+	 * by.
+	 */
+	static class JoinGroup implements Closeable {
+
+		private final int numInputs;
+		private final byte[] delimiter;
+		private final byte[][] emptyValues;
+		private final boolean[] required;
+		private final JoinValueBuffer[] buffers;
+		private boolean streaming;
+
+		private byte[] joined = new byte[4096];
+		private final Text joinValue = new Text();
+		private final Text outValue = new Text();
+
+		public JoinGroup(Configuration conf) throws IOException {
+			numInputs = getNumInputs(conf);
+			String strDelimiter = conf.get("delimiter", "\t");
+			delimiter = strDelimiter.getBytes("utf-8");
+			long joinBufferSize = conf.getLong(JOIN_BUFFER_SIZE, 64) * 1024 * 1024;
+
+			String joinType = conf.get("joinType", "left");
+			required = new boolean[numInputs];
+			emptyValues = new byte[numInputs][];
+			buffers = new JoinValueBuffer[numInputs];
+			for (int i = 0; i < numInputs; i++) {
+				required[i] = joinType.equals("inner") || (joinType.equals("left") && i == 0)
+						|| (joinType.equals("right") && i == numInputs - 1);
+				emptyValues[i] = emptyValue(conf, i, strDelimiter).getBytes("utf-8");
+				if (i > 0) {
+					buffers[i] = new JoinValueBuffer(joinBufferSize);
+				}
+			}
+
+			System.out.println("numInputs == " + numInputs);
+			System.out.println("joinType == " + joinType);
+			System.out.println("joinBufferSize == " + joinBufferSize);
+		}
+
+		/**
+		 * Starts a new key.
+		 */
+		public void start() throws IOException {
+			for (int i = 1; i < numInputs; i++) {
+				buffers[i].clear();
+			}
+			streaming = false;
+		}
+
+		/**
+		 * Adds a value of the input, writing the joined records if it is of the first input.
+		 *
+		 * @return false if the key can not be joined(a required input has no value), so the rest
+		 * of its values can be skipped.
+		 */
+		public boolean add(int input, Text value, TaskInputOutputContext<?, ?, NullWritable, Text> context)
+				throws IOException, InterruptedException {
+			if (input > 0) {
+				if (streaming) {
+					throw new IllegalStateException("A value of input " + input + " after the first input");
+				}
+				buffers[input].add(value);
+				return true;
+			}
+
+			if (!streaming) {
+				if (!finish(context)) {
+					return false;
+				}
+				streaming = true;
+			}
+			writeJoined(1, append(0, value.getBytes(), value.getLength()), context);
+			return true;
+		}
+
+		/**
+		 * Ends the key, writing the joined records if the first input had no value.
+		 */
+		public void end(TaskInputOutputContext<?, ?, NullWritable, Text> context) throws IOException, InterruptedException {
+			if (!streaming && !required[0] && finish(context)) {
+				writeJoined(1, append(0, emptyValues[0], emptyValues[0].length), context);
+			}
+		}
+
+		/**
+		 * Ends buffering the values of the key.
+		 *
+		 * @return true if every required input has a value.
+		 */
+		private boolean finish(TaskInputOutputContext<?, ?, NullWritable, Text> context) throws IOException {
+			boolean joinable = true;
+			for (int i = 1; i < numInputs; i++) {
+				buffers[i].finish();
+				if (buffers[i].isSpilled()) {
+					context.getCounter(JOIN_COUNTER_GROUP, "SPILLED_KEYS").increment(1);
+				}
+				if (required[i] && buffers[i].isEmpty()) {
+					joinable = false;
 				}
 			}
+			return joinable;
+		}
+
+		/**
+		 * Writes a joined record for each combination of the values of the input and the inputs
+		 * after it, appended to the first {@code length} bytes joined so far.
+		 */
+		private void writeJoined(int input, int length, TaskInputOutputContext<?, ?, NullWritable, Text> context)
+				throws IOException, InterruptedException {
+			if (input == numInputs) {
+				outValue.set(joined, 0, length);
+				context.write(NullWritable.get(), outValue);
+				return;
+			}
+
+			JoinValueBuffer values = buffers[input];
+			if (values.isEmpty()) {
+				writeJoined(input + 1, appendField(length, emptyValues[input], emptyValues[input].length), context);
+				return;
+			}
+			values.rewind();
+			while (values.next(joinValue)) {
+				writeJoined(input + 1, appendField(length, joinValue.getBytes(), joinValue.getLength()), context);
+			}
+		}
+
+		private int appendField(int length, byte[] b, int l) {
+			return append(append(length, delimiter, delimiter.length), b, l);
+		}
 
-			// pump final output to file
-			for (String baseValue : baseValueList) {
-				if (joinValueList.size() > 0) {
-					// for outer join
-					for (String joinValue : joinValueList) {
-						context.write(NullWritable.get(), new Text(baseValue + delimiter + joinValue));
+		private int append(int length, byte[] b, int l) {
+			if (length + l > joined.length) {
+				joined = Arrays.copyOf(joined, Math.max(joined.length * 2, length + l));
+			}
+			System.arraycopy(b, 0, joined, length, l);
+			return length + l;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (int i = 1; i < numInputs; i++) {
+				buffers[i].close();
+			}
+		}
+	}
+
+	/**
+	 * This class is a mapper to join the base input with the join input loaded from the
+	 * distributed cache, without reducers.
+	 */
+	static class BroadcastJoinMapper extends Mapper<LongWritable, Text, NullWritable, Text> {
+
+		private byte[] delimiter;
+		private byte[] emptyJoinValue;
+		private DelimitedRecord record;
+		private int[] keyColumns;
+		private boolean innerJoin;
+		private BytesMultiMap joinTable;
+
+		private final Text joinKey = new Text();
+		private final Text outValue = new Text();
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			Configuration conf = context.getConfiguration();
+
+			String strDelimiter = conf.get("delimiter", "\t");
+			delimiter = strDelimiter.getBytes("utf-8");
+			emptyJoinValue = emptyValue(conf, 1, strDelimiter).getBytes("utf-8");
+			record = new DelimitedRecord(strDelimiter);
+			keyColumns = getKeyColumns(conf, 0);
+			innerJoin = conf.get("joinType", "left").equals("inner");
+
+			int[] joinKeyColumns = getKeyColumns(conf, 1);
+			int[] joinValueColumns = getValueColumns(conf, 1);
+			joinTable = new BytesMultiMap();
+			Text joinValue = new Text();
+
+			URI[] cacheFiles = context.getCacheFiles();
+			CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+			for (int i = 0; i < conf.getInt(BROADCAST_FILES, 0); i++) {
+				URI uri = findCacheFile(cacheFiles, BROADCAST_LINK_PREFIX + i);
+				InputStream in = HadoopUtil.openStream(getCacheFilePath(uri), conf);
+				CompressionCodec codec = codecs.getCodec(new Path(uri.getPath()));
+				if (codec != null) {
+					in = codec.createInputStream(in);
+				}
+				LineReader reader = new LineReader(in, conf);
+				try {
+					Text line = new Text();
+					while (reader.readLine(line) > 0) {
+						record.set(line);
+						record.copyTo(joinKeyColumns, delimiter, joinKey);
+						if (joinValueColumns == null) {
+							joinValue.set(line);
+						}
+						else {
+							record.copyTo(joinValueColumns, delimiter, joinValue);
+						}
+						joinTable.put(joinKey.getBytes(), 0, joinKey.getLength(), joinValue.getBytes(), 0, joinValue.getLength());
 					}
+				} finally {
+					reader.close();
 				}
-				else {
-					context.write(NullWritable.get(), new Text(baseValue + delimiter + emptyJoinValue));
+			}
+
+			System.out.println("joinKeys == " + joinTable.numKeys());
+			System.out.println("joinValues == " + joinTable.numValues());
+			System.out.println("joinTableBytes == " + joinTable.memorySize());
+		}
+
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			record.set(value);
+			record.copyTo(keyColumns, delimiter, joinKey);
+
+			int joinValue = joinTable.getFirstValue(joinKey.getBytes(), 0, joinKey.getLength());
+			if (joinValue < 0) {
+				if (!innerJoin) {
+					outValue.set(value);
+					outValue.append(delimiter, 0, delimiter.length);
+					outValue.append(emptyJoinValue, 0, emptyJoinValue.length);
+					context.write(NullWritable.get(), outValue);
 				}
+				return;
+			}
+			for (; joinValue >= 0; joinValue = joinTable.nextValue(joinValue)) {
+				outValue.set(value);
+				outValue.append(delimiter, 0, delimiter.length);
+				outValue.append(joinTable.getArena(), joinTable.getValueOffset(joinValue), joinTable.getValueLength(joinValue));
+				context.write(NullWritable.get(), outValue);
 			}
 		}
 	}
-	
+
 	/**
-	 * This class is a partitioner.
+	 * This class is a partitioner, which sends the salts of a heavy key to different reducers.
 	 */
-	static class JoinKeyPartitioner extends Partitioner<TextPairWritable, Text> {
+	static class JoinKeyPartitioner extends Partitioner<JoinKeyWritable, Text> implements Configurable {
+
+		private Configuration conf;
+		private SkewedKeys skewedKeys;
+
+		@Override
+		public void setConf(Configuration conf) {
+			this.conf = conf;
+			skewedKeys = SkewedKeys.isSkewed(conf) ? new SkewedKeys(conf) : null;
+		}
 
 		@Override
-		public int getPartition(TextPairWritable key, Text value, int numPartitions) {
-			Text strKey = key.getFirst();
+		public Configuration getConf() {
+			return conf;
+		}
+
+		@Override
+		public int getPartition(JoinKeyWritable key, Text value, int numPartitions) {
+			if (skewedKeys != null) {
+				return skewedKeys.getPartition(key.getKey(), numPartitions);
+			}
 
-			return (strKey.hashCode() & Integer.MAX_VALUE) % numPartitions;
+			return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
 		}	
 	}
 	
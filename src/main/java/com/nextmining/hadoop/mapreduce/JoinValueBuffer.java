@@ -0,0 +1,288 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BytesHashIndex;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class buffers the distinct join values of a key group so that they can be replayed for
+ * every base record of the group.
+ * <p/>
+ * The values are held in memory in a {@link BytesHashIndex}, which makes them distinct, up to
+ * {@code maxMemory} bytes. Beyond that they are spilled to sorted local run files, which
+ * {@link #finish()} merges into one distinct, sorted file, so the memory of a reducer does not
+ * grow with the size of a key group.
+ *
+ * @author Younggue Bae
+ */
+class JoinValueBuffer implements Closeable {
+
+	/* estimated bytes per value besides its bytes: offset, length, hash and two slots */
+	private static final int VALUE_OVERHEAD = 20;
+
+	private final long maxMemory;
+
+	private BytesHashIndex values = new BytesHashIndex();
+
+	private final List<File> runs = new ArrayList<File>();
+	private File merged;
+
+	private int next;
+	private DataInputStream in;
+	private int remaining;
+
+	public JoinValueBuffer(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * Adds a copy of the value, unless the buffer already holds it in memory. Values spilled to
+	 * disk are made distinct by {@link #finish()}.
+	 */
+	public void add(byte[] b, int s, int l) throws IOException {
+		int size = values.size();
+		values.add(b, s, l);
+		if (values.size() == size) {
+			return;
+		}
+
+		if (values.getArenaSize() + (long) values.size() * VALUE_OVERHEAD > maxMemory) {
+			runs.add(spill());
+			clearMemory();
+		}
+	}
+
+	public void add(Text value) throws IOException {
+		add(value.getBytes(), 0, value.getLength());
+	}
+
+	/**
+	 * Ends adding values. If values were spilled, the rest are spilled too and all runs are merged.
+	 */
+	public void finish() throws IOException {
+		if (!runs.isEmpty()) {
+			if (values.size() > 0) {
+				runs.add(spill());
+				clearMemory();
+			}
+			merged = merge(runs);
+			runs.clear();
+		}
+	}
+
+	/**
+	 * @return true if the buffer holds no value.
+	 */
+	public boolean isEmpty() {
+		return values.size() == 0 && merged == null && runs.isEmpty();
+	}
+
+	/**
+	 * @return true if the values were spilled to disk.
+	 */
+	public boolean isSpilled() {
+		return merged != null || !runs.isEmpty();
+	}
+
+	/**
+	 * Starts reading the values from the first one.
+	 */
+	public void rewind() throws IOException {
+		next = 0;
+		closeStream();
+		if (merged != null) {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(merged), 65536));
+			remaining = in.readInt();
+		}
+	}
+
+	/**
+	 * Reads the next value into {@code value}.
+	 *
+	 * @return false if there are no more values.
+	 */
+	public boolean next(Text value) throws IOException {
+		if (in != null) {
+			if (remaining-- <= 0) {
+				return false;
+			}
+			value.readWithKnownLength(in, WritableUtils.readVInt(in));
+			return true;
+		}
+		if (next < values.size()) {
+			value.set(values.getArena(), values.getOffset(next), values.getLength(next));
+			next++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all values and spill files.
+	 */
+	public void clear() throws IOException {
+		closeStream();
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		if (merged != null) {
+			merged.delete();
+			merged = null;
+		}
+		clearMemory();
+	}
+
+	@Override
+	public void close() throws IOException {
+		clear();
+	}
+
+	private void closeStream() throws IOException {
+		if (in != null) {
+			in.close();
+			in = null;
+		}
+	}
+
+	private void clearMemory() {
+		int arenaLength = values.getArena().length;
+		if (arenaLength > (1 << 16) && arenaLength > maxMemory / 2) {
+			// do not keep a buffer of a hot key for the rest of the task
+			values = new BytesHashIndex();
+		}
+		else {
+			values.clear();
+		}
+		next = 0;
+	}
+
+	/**
+	 * Writes the values in memory to a run file in sorted order.
+	 */
+	private File spill() throws IOException {
+		int size = values.size();
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return values.compare(a, b);
+			}
+		});
+
+		File run = File.createTempFile("join-values", ".run");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536));
+		try {
+			out.writeInt(size);
+			for (int i : order) {
+				WritableUtils.writeVInt(out, values.getLength(i));
+				out.write(values.getArena(), values.getOffset(i), values.getLength(i));
+			}
+		} finally {
+			out.close();
+		}
+		return run;
+	}
+
+	/**
+	 * Merges the sorted runs into one file of distinct values and deletes the runs.
+	 */
+	private static File merge(List<File> runs) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size());
+		File file = File.createTempFile("join-values", ".merged");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+
+			Text last = new Text();
+			boolean first = true;
+			int count = 0;
+
+			// the count is written over the header when it is known
+			out.writeInt(0);
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				if (first || reader.value.compareTo(last) != 0) {
+					WritableUtils.writeVInt(out, reader.value.getLength());
+					out.write(reader.value.getBytes(), 0, reader.value.getLength());
+					last.set(reader.value);
+					first = false;
+					count++;
+				}
+				if (reader.next()) {
+					queue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			out.close();
+			setCount(file, count);
+		} finally {
+			out.close();
+			for (RunReader reader : queue) {
+				reader.close();
+			}
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+		return file;
+	}
+
+	private static void setCount(File file, int count) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(count);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * A reader of a sorted run, ordered by its current value.
+	 */
+	private static class RunReader implements Comparable<RunReader>, Closeable {
+		private final DataInputStream in;
+		private int remaining;
+		final Text value = new Text();
+
+		RunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+			remaining = in.readInt();
+		}
+
+		boolean next() throws IOException {
+			if (remaining-- <= 0) {
+				return false;
+			}
+			value.readWithKnownLength(in, WritableUtils.readVInt(in));
+			return true;
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			return value.compareTo(other.value);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.nextmining.hadoop.mapreduce;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Samples the lines of the input of a job in the driver, e.g. to choose the split points of a
+ * total order sort or to find the frequent keys of a join.
+ * <p/>
+ * Up to {@code maxSplits} splits spread evenly over the input are read and a uniform random
+ * sample of their lines is kept with reservoir sampling. The random seed is fixed, so the same
+ * input gives the same sample.
+ */
+public class LineSampler {
+
+	private final int numSamples;
+	private final int maxSplits;
+	private final Random random = new Random(13L);
+
+	/**
+	 * @param numSamples the number of lines to keep.
+	 * @param maxSplits the number of splits to read at most.
+	 */
+	public LineSampler(int numSamples, int maxSplits) {
+		if (numSamples <= 0 || maxSplits <= 0) {
+			throw new IllegalArgumentException("The number of samples and splits must be positive!");
+		}
+		this.numSamples = numSamples;
+		this.maxSplits = maxSplits;
+	}
+
+	/**
+	 * Samples the lines of the job input, read with {@link TextInputFormat}.
+	 */
+	public List<Text> sample(Job job) throws IOException, InterruptedException {
+		TextInputFormat inputFormat = new TextInputFormat();
+		List<InputSplit> splits = inputFormat.getSplits(job);
+
+		List<Text> samples = new ArrayList<Text>(numSamples);
+		long seen = 0;
+		int numSplits = Math.min(splits.size(), maxSplits);
+		for (int i = 0; i < numSplits; i++) {
+			InputSplit split = splits.get((int) ((long) i * splits.size() / numSplits));
+			TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+			RecordReader<?, Text> reader = inputFormat.createRecordReader(split, context);
+			try {
+				reader.initialize(split, context);
+				while (reader.nextKeyValue()) {
+					seen++;
+					if (samples.size() < numSamples) {
+						samples.add(new Text(reader.getCurrentValue()));
+					}
+					else {
+						long j = (long) (random.nextDouble() * seen);
+						if (j < numSamples) {
+							samples.get((int) j).set(reader.getCurrentValue());
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return samples;
+	}
+
+}
@@ -0,0 +1,427 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.SortKeySpec;
+import com.nextmining.hadoop.io.SortKeyWritable;
+import com.nextmining.hadoop.iterator.FileLineIterator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * This class sorts local files like {@link SortJob}, without a cluster.
+ * <p/>
+ * The lines are read into memory until the memory budget is used up, the run is sorted by a
+ * parallel merge sort on a fork-join pool and spilled to a gzip compressed temporary file. The
+ * sorted runs(the last one stays in memory) are then merged with a loser tree into the output
+ * file. The sort columns are given with the same options as {@link SortJob} and compared as
+ * {@link SortKeyWritable} bytes, so both sort the same way.
+ *
+ * @author Younggue Bae
+ */
+public class LocalSortEngine extends AbstractJob {
+
+	/* the estimated memory of a line besides its key and bytes */
+	private static final int LINE_OVERHEAD = 64;
+
+	/* runs shorter than this are sorted without forking */
+	private static final int SEQUENTIAL_THRESHOLD = 8192;
+
+	private SortKeySpec keySpec;
+	private String delimiter;
+	private long memoryBudget;
+	private File tempDir;
+	private ForkJoinPool pool;
+
+	public static void main(String[] args) throws Exception {
+		ToolRunner.run(new Configuration(), new LocalSortEngine(), args);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		addOption("input", "i", "Local input files or directories(comma separated)", true);
+		addOption("output", "o", "The local output file", true);
+		addOption("sortColumn", null, "The sort column index.", false);
+		addOption("sortOption", null, "The sort option.(asc or desc, The default is asc)", false);
+		addOption("sortDatatype", null, "The sort column datatype.(string, numeric or long, The default is numeric)", false);
+		addOption("sortColumns", null, "The sort columns, instead of --sortColumn.(column:datatype:direction, comma separated, ex. 3:numeric:desc,0:string:asc)", false);
+		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
+		addOption("memory", null, "The memory budget of a run in MB(The default is 256)", false);
+		addOption("tempDir", null, "The directory of the spilled runs(The default is java.io.tmpdir)", false);
+		addOption("threads", null, "The number of sorting threads(The default is the number of processors)", false);
+
+		parseArguments(args);
+
+		String delimiter = getOption("delimiter", "\t");
+		if (delimiter.equals("\\t")) {
+			delimiter = "\t";
+		}
+		this.delimiter = delimiter;
+		this.keySpec = SortJob.toKeySpec(getOption("sortColumn"), getOption("sortOption", "asc"),
+				getOption("sortDatatype", "numeric"), getOption("sortColumns"));
+		this.memoryBudget = Long.parseLong(getOption("memory", "256")) << 20;
+		this.tempDir = new File(getOption("tempDir", System.getProperty("java.io.tmpdir")));
+		int threads = Integer.parseInt(getOption("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+		List<File> inputs = new ArrayList<File>();
+		for (String input : getOption("input").split(",")) {
+			File file = new File(input.trim());
+			if (file.isDirectory()) {
+				File[] children = file.listFiles();
+				Arrays.sort(children);
+				for (File child : children) {
+					if (child.isFile() && !child.getName().startsWith("_") && !child.getName().startsWith(".")) {
+						inputs.add(child);
+					}
+				}
+			}
+			else {
+				inputs.add(file);
+			}
+		}
+
+		logger.info("sortColumns == " + keySpec);
+		logger.info("input files == " + inputs.size());
+
+		pool = new ForkJoinPool(threads);
+		try {
+			sort(inputs, new File(getOption("output")));
+		} finally {
+			pool.shutdown();
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Sorts the lines of the input files into the output file.
+	 */
+	void sort(List<File> inputs, File output) throws IOException {
+		DelimitedRecord record = new DelimitedRecord(delimiter);
+		SortKeyWritable key = new SortKeyWritable();
+		Text line = new Text();
+
+		List<File> runs = new ArrayList<File>();
+		List<Entry> buffer = new ArrayList<Entry>();
+		long used = 0;
+		try {
+			for (File input : inputs) {
+				FileLineIterator it = new FileLineIterator(input);
+				try {
+					while (it.hasNext()) {
+						line.set(it.next());
+						record.set(line);
+						try {
+							keySpec.build(record, key);
+						} catch (RuntimeException e) {
+							throw new IOException("Invalid sort column(" + keySpec + ") in " + input + ": " + line, e);
+						}
+						Entry entry = new Entry(Arrays.copyOf(key.getBytes(), key.getLength()), Arrays.copyOf(line.getBytes(), line.getLength()));
+						buffer.add(entry);
+						used += entry.key.length + entry.line.length + LINE_OVERHEAD;
+						if (used >= memoryBudget) {
+							runs.add(spill(sortRun(buffer)));
+							buffer.clear();
+							used = 0;
+						}
+					}
+				} finally {
+					it.close();
+				}
+			}
+
+			Entry[] lastRun = sortRun(buffer);
+			buffer = null;
+			logger.info("spilled runs == " + runs.size());
+			merge(runs, lastRun, output);
+		} finally {
+			for (File run : runs) {
+				if (!run.delete()) {
+					logger.warn("Failed to delete the run " + run);
+				}
+			}
+		}
+	}
+
+	private Entry[] sortRun(List<Entry> buffer) {
+		Entry[] entries = buffer.toArray(new Entry[buffer.size()]);
+		pool.invoke(new MergeSortTask(entries, new Entry[entries.length], 0, entries.length));
+		return entries;
+	}
+
+	private File spill(Entry[] run) throws IOException {
+		File file = File.createTempFile("sort-run-", ".gz", tempDir);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), 65536)));
+		try {
+			for (Entry entry : run) {
+				WritableUtils.writeVInt(out, entry.key.length);
+				out.write(entry.key);
+				WritableUtils.writeVInt(out, entry.line.length);
+				out.write(entry.line);
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private void merge(List<File> runs, Entry[] lastRun, File output) throws IOException {
+		List<RunSource> sources = new ArrayList<RunSource>();
+		OutputStream out = null;
+		try {
+			for (File run : runs) {
+				sources.add(new FileRunSource(run));
+			}
+			sources.add(new MemoryRunSource(lastRun));
+
+			out = new BufferedOutputStream(new FileOutputStream(output), 65536);
+			LoserTree tree = new LoserTree(sources.toArray(new RunSource[sources.size()]));
+			Entry entry;
+			while ((entry = tree.next()) != null) {
+				out.write(entry.line);
+				out.write('\n');
+			}
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+			for (RunSource source : sources) {
+				source.close();
+			}
+		}
+	}
+
+	/** a line with its sort key bytes */
+	static class Entry {
+		final byte[] key;
+		final byte[] line;
+
+		Entry(byte[] key, byte[] line) {
+			this.key = key;
+			this.line = line;
+		}
+
+		int compareTo(Entry o) {
+			return WritableComparator.compareBytes(key, 0, key.length, o.key, 0, o.key.length);
+		}
+	}
+
+	/**
+	 * Sorts entries[from, to) by merge sort, sorting the halves in parallel.
+	 */
+	static class MergeSortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Entry[] entries;
+		private final Entry[] tmp;
+		private final int from;
+		private final int to;
+
+		MergeSortTask(Entry[] entries, Entry[] tmp, int from, int to) {
+			this.entries = entries;
+			this.tmp = tmp;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				sequentialSort(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new MergeSortTask(entries, tmp, from, mid), new MergeSortTask(entries, tmp, mid, to));
+			merge(from, mid, to);
+		}
+
+		private void sequentialSort(int from, int to) {
+			if (to - from <= 16) {
+				for (int i = from + 1; i < to; i++) {
+					Entry entry = entries[i];
+					int j = i - 1;
+					while (j >= from && entries[j].compareTo(entry) > 0) {
+						entries[j + 1] = entries[j];
+						j--;
+					}
+					entries[j + 1] = entry;
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			sequentialSort(from, mid);
+			sequentialSort(mid, to);
+			merge(from, mid, to);
+		}
+
+		private void merge(int from, int mid, int to) {
+			if (entries[mid - 1].compareTo(entries[mid]) <= 0) {
+				return;
+			}
+			System.arraycopy(entries, from, tmp, from, to - from);
+			int left = from;
+			int right = mid;
+			for (int i = from; i < to; i++) {
+				if (right >= to || (left < mid && tmp[left].compareTo(tmp[right]) <= 0)) {
+					entries[i] = tmp[left++];
+				}
+				else {
+					entries[i] = tmp[right++];
+				}
+			}
+		}
+	}
+
+	/** a sorted run being merged */
+	interface RunSource {
+		/**
+		 * @return the next entry, or null at the end of the run.
+		 */
+		Entry next() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	static class MemoryRunSource implements RunSource {
+		private Entry[] entries;
+		private int next;
+
+		MemoryRunSource(Entry[] entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public Entry next() {
+			if (next >= entries.length) {
+				return null;
+			}
+			Entry entry = entries[next];
+			entries[next++] = null;
+			return entry;
+		}
+
+		@Override
+		public void close() {
+			entries = new Entry[0];
+		}
+	}
+
+	static class FileRunSource implements RunSource {
+		private final DataInputStream in;
+
+		FileRunSource(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 65536)));
+		}
+
+		@Override
+		public Entry next() throws IOException {
+			int keyLength;
+			try {
+				keyLength = WritableUtils.readVInt(in);
+			} catch (EOFException e) {
+				return null;
+			}
+			byte[] key = new byte[keyLength];
+			in.readFully(key);
+			byte[] line = new byte[WritableUtils.readVInt(in)];
+			in.readFully(line);
+			return new Entry(key, line);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * A tournament tree of losers over the runs: the inner nodes hold the run which lost the match
+	 * at the node, so replacing the winner takes one path of log(k) comparisons to the root.
+	 * An exhausted run loses every match.
+	 */
+	static class LoserTree {
+		private final RunSource[] sources;
+		private final Entry[] heads;
+		/* tree[0] is the winner, tree[1..k) the losers of the inner nodes */
+		private final int[] tree;
+		private final int k;
+
+		LoserTree(RunSource[] sources) throws IOException {
+			this.sources = sources;
+			this.k = sources.length;
+			this.heads = new Entry[k];
+			this.tree = new int[k];
+			for (int i = 0; i < k; i++) {
+				heads[i] = sources[i].next();
+			}
+			Arrays.fill(tree, -1);
+			for (int i = k - 1; i >= 0; i--) {
+				adjust(i);
+			}
+		}
+
+		/**
+		 * @return the smallest entry of all runs, or null if all runs are exhausted.
+		 */
+		Entry next() throws IOException {
+			int winner = tree[0];
+			Entry entry = heads[winner];
+			if (entry != null) {
+				heads[winner] = sources[winner].next();
+				adjust(winner);
+			}
+			return entry;
+		}
+
+		/* plays the run from its leaf up to the root */
+		private void adjust(int source) {
+			int winner = source;
+			for (int node = (source + k) >>> 1; node > 0; node >>>= 1) {
+				if (tree[node] < 0) {
+					// still building: the first run to reach the node waits there
+					tree[node] = winner;
+					return;
+				}
+				if (beats(tree[node], winner)) {
+					int loser = winner;
+					winner = tree[node];
+					tree[node] = loser;
+				}
+			}
+			tree[0] = winner;
+		}
+
+		private boolean beats(int a, int b) {
+			if (heads[a] == null) {
+				return false;
+			}
+			if (heads[b] == null) {
+				return true;
+			}
+			int cmp = heads[a].compareTo(heads[b]);
+			return cmp < 0 || (cmp == 0 && a < b);
+		}
+	}
+
+}
@@ -1,15 +1,9 @@
 package com.nextmining.hadoop.mapreduce;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -17,97 +11,225 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.log4j.Logger;
 
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Reads records that are delimited by a specific begin tag.
- * 
+ * Reads records that are delimited by a specific begin tag, or by lines matching a start
+ * pattern(e.g. the timestamped header of a log record followed by the lines of a stack trace).
+ *
  * @author Younggue Bae
  */
 public class MultiLineInputFormat extends TextInputFormat {
 	public static final String START_TAG_KEY = "input.start";
+	/** a regular expression which the first line of a record starts with, instead of a start tag */
+	public static final String START_PATTERN_KEY = "input.startPattern";
+	public static final String BUFFER_SIZE_KEY = "input.bufferSize";
 
 	@Override
 	public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
 		return new MultiLineRecordReader();
 	}
 
-	/** MultiLineRecordReader */
+	/**
+	 * MultiLineRecordReader
+	 * <p/>
+	 * A record runs from a start tag up to the next one, or to the end of the file, and belongs to the
+	 * split holding the first byte of its start tag. The bytes before the first start tag of the file
+	 * are a record of the first split. A bzip2 file is split by its blocks(see
+	 * {@link BufferedSplitReader}).
+	 * <p/>
+	 * With a start pattern, a record runs from a line starting with a match of the pattern up to the
+	 * next such line, and belongs to the split holding the newline before its first line, as a line of
+	 * {@link org.apache.hadoop.mapreduce.lib.input.LineRecordReader} does. The pattern is matched
+	 * against the bytes of a line as ISO-8859-1 characters, without decoding the line, so a literal
+	 * non-ASCII character in the pattern matches its UTF-8 bytes but a character class with one does
+	 * not.
+	 */
 	public static class MultiLineRecordReader extends RecordReader<LongWritable, Text> {
 		private static final Logger LOG = Logger.getLogger(MultiLineRecordReader.class);
 
-		private byte[] startTag;
-		private long start;
-		private long end;
-		private long pos;
-		private DataInputStream fsin = null;
+		private static final BufferedSplitReader.Tag NEWLINE = new BufferedSplitReader.Tag(new byte[] {'\n'});
+
+		private BufferedSplitReader.Tag startTag;
+		private Matcher startMatcher;
+		private final Latin1Sequence line = new Latin1Sequence();
+		private BufferedSplitReader reader = null;
 		private DataOutputBuffer buffer = new DataOutputBuffer();
+		private DataOutputBuffer nextBuffer = new DataOutputBuffer();
+
+		/** the start of the next record, or -1 if the split has no more */
+		private long nextRecordPos;
+		/** true if the line after the last line read is in the split */
+		private boolean nextLineInSplit;
+		/** false once the last line read ended without a newline */
+		private boolean lineEnded;
 
 		private final LongWritable key = new LongWritable();
 		private final Text value = new Text();
-		private boolean isEOF = false;
 
 		@Override
 		public void initialize(InputSplit input, TaskAttemptContext context) throws IOException, InterruptedException {
 			Configuration conf = context.getConfiguration();
-			if (conf.get(START_TAG_KEY) == null)
+			String startPattern = conf.get(START_PATTERN_KEY);
+			if (conf.get(START_TAG_KEY) == null && startPattern == null)
 				throw new RuntimeException("Error! start tag is unspecified!");
 
-			startTag = conf.get(START_TAG_KEY).getBytes("utf-8");
+			if (startPattern != null) {
+				// the pattern in the characters of its UTF-8 bytes, to match the bytes of a line
+				startMatcher = Pattern.compile(new String(startPattern.getBytes("utf-8"), "ISO-8859-1")).matcher("");
+			}
+			else {
+				startTag = new BufferedSplitReader.Tag(conf.get(START_TAG_KEY).getBytes("utf-8"));
+			}
 
 			FileSplit split = (FileSplit) input;
-			start = split.getStart();
-			Path file = split.getPath();
+			int bufferSize = conf.getInt(BUFFER_SIZE_KEY, BufferedSplitReader.DEFAULT_BUFFER_SIZE);
+			reader = BufferedSplitReader.open(split, conf, bufferSize);
+			LOG.info("Reading " + split.getPath() + " from " + reader.getStart() + " to " + reader.getEnd() + "...");
 
-			CompressionCodecFactory compressionCodecs = new CompressionCodecFactory(conf);
-			CompressionCodec codec = compressionCodecs.getCodec(file);
+			if (startMatcher != null) {
+				initializeLines();
+			}
+			else if (reader.getStart() == 0 && reader.getEnd() > 0) {
+				// the bytes before the first start tag
+				nextRecordPos = 0;
+			}
+			else if (reader.readUntil(startTag, null, true)) {
+				nextRecordPos = reader.getPos() - startTag.length();
+			}
+			else {
+				nextRecordPos = -1;
+			}
+		}
 
-			FileSystem fs = file.getFileSystem(conf);
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			if (startMatcher != null) {
+				return nextLines();
+			}
 
-			if (codec != null) {
-				LOG.info("Reading compressed file " + file + "...");
-				fsin = new DataInputStream(codec.createInputStream(fs.open(file)));
+			while (nextRecordPos >= 0) {
+				long recordPos = nextRecordPos;
 
-				end = Long.MAX_VALUE;
-			} else {
-				LOG.info("Reading uncompressed file " + file + "...");
-				FSDataInputStream fileIn = fs.open(file);
+				buffer.reset();
+				if (recordPos < reader.getPos()) {
+					// the start tag already read
+					buffer.write(startTag.getBytes());
+				}
+				int length;
+				if (reader.readUntil(startTag, buffer, false)) {
+					length = buffer.getLength() - startTag.length();
+					nextRecordPos = reader.isMatchInSplit() ? reader.getPos() - startTag.length() : -1;
+				}
+				else {
+					length = buffer.getLength();
+					nextRecordPos = -1;
+				}
 
-				fileIn.seek(start);
-				fsin = fileIn;
+				// no bytes before a start tag at the start of the file
+				if (length > 0) {
+					key.set(recordPos);
+					value.set(buffer.getData(), 0, length);
+					return true;
+				}
+			}
+			return false;
+		}
 
-				end = start + split.getLength();
+		/**
+		 * Reads the first line of the first record of the split into the buffer: the first line of
+		 * the file, with the lines before the first match, or the first matching line after the
+		 * partial line the split starts in.
+		 */
+		private void initializeLines() throws IOException {
+			buffer.reset();
+			nextRecordPos = -1;
+			lineEnded = true;
+			if (reader.getStart() == 0) {
+				if (reader.getEnd() > 0 && readLine(buffer)) {
+					nextRecordPos = 0;
+				}
+				return;
 			}
 
-			// Because input streams of gzipped files are not seekable, we need to keep track of bytes
-			// consumed ourselves.
-			pos = start;
+			nextLineInSplit = reader.readUntil(NEWLINE, null, true);
+			while (nextLineInSplit) {
+				long linePos = reader.getPos();
+				buffer.reset();
+				if (!readLine(buffer)) {
+					return;
+				}
+				if (isStartLine(buffer, 0)) {
+					nextRecordPos = linePos;
+					return;
+				}
+			}
 		}
 
-		@Override
-		public boolean nextKeyValue() throws IOException, InterruptedException {
+		/**
+		 * Reads the lines after the first line of the record in the buffer, up to the next line
+		 * matching the start pattern, which is kept for the next record.
+		 */
+		private boolean nextLines() throws IOException {
+			if (nextRecordPos < 0) {
+				return false;
+			}
+			key.set(nextRecordPos);
+			nextRecordPos = -1;
 
-			if (pos < end) {
-				try {
-					return writeUntilMatch(startTag);
-				} finally {
-					// Because input streams of gzipped files are not seekable, we need to keep track of
-					// bytes consumed ourselves.
-
-					// This is a sanity check to make sure our internal computation of bytes consumed is
-					// accurate. This should be removed later for efficiency once we confirm that this code
-					// works correctly.
-
-					if (fsin instanceof Seekable) {
-						if (pos != ((Seekable) fsin).getPos()) {
-							throw new RuntimeException("bytes consumed error!");
-						}
+			while (lineEnded) {
+				boolean inSplit = nextLineInSplit;
+				int lineStart = buffer.getLength();
+				if (!readLine(buffer)) {
+					break;
+				}
+				if (isStartLine(buffer, lineStart)) {
+					value.set(buffer.getData(), 0, lineStart);
+					if (inSplit) {
+						nextRecordPos = reader.getPos() - (buffer.getLength() - lineStart);
 					}
+					nextBuffer.reset();
+					nextBuffer.write(buffer.getData(), lineStart, buffer.getLength() - lineStart);
+					DataOutputBuffer tmp = buffer;
+					buffer = nextBuffer;
+					nextBuffer = tmp;
+					return true;
 				}
 			}
-			
-			return false;
+			value.set(buffer.getData(), 0, buffer.getLength());
+			buffer.reset();
+			return true;
+		}
+
+		/**
+		 * Appends the next line, with its newline, to the buffer.
+		 *
+		 * @return false at the end of the file.
+		 */
+		private boolean readLine(DataOutputBuffer out) throws IOException {
+			int length = out.getLength();
+			lineEnded = reader.readUntil(NEWLINE, out, false);
+			nextLineInSplit = lineEnded && reader.isMatchInSplit();
+			return out.getLength() > length;
+		}
+
+		/**
+		 * @return true if the line from {@code lineStart} to the end of the buffer starts with a
+		 * match of the start pattern.
+		 */
+		private boolean isStartLine(DataOutputBuffer out, int lineStart) {
+			int lineEnd = out.getLength();
+			byte[] b = out.getData();
+			if (lineEnd > lineStart && b[lineEnd - 1] == '\n') {
+				lineEnd--;
+				if (lineEnd > lineStart && b[lineEnd - 1] == '\r') {
+					lineEnd--;
+				}
+			}
+			line.set(b, lineStart, lineEnd - lineStart);
+			return startMatcher.reset(line).lookingAt();
 		}
 
 		@Override
@@ -122,63 +244,61 @@ public class MultiLineInputFormat extends TextInputFormat {
 
 		@Override
 		public void close() throws IOException {
-			fsin.close();
+			if (reader != null) {
+				reader.close();
+			}
 		}
 
 		@Override
 		public float getProgress() throws IOException {
-			return ((float) (pos - start)) / ((float) (end - start));
-		}
-
-		private boolean writeUntilMatch(byte[] match) throws IOException {
-	
-			int i = 0;
-			while (!isEOF) {
-				int b = fsin.read();
-				// increment position (bytes consumed)
-				pos++;
-
-				// end of file:
-				if (b == -1) {
-					//System.out.println("end of file");
-					
-					key.set(pos);
-					value.set(buffer.getData(), 0, buffer.getLength());
-					buffer.reset();
-					
-					isEOF = true;			
-					return true;
-				}
-				
-				// save to buffer:
-				buffer.write(b);
-
-				// check if we're matching:
-				if (b == match[i]) {
-					i++;
-					if (i >= match.length && pos > startTag.length) {						
-						key.set(pos);
-						value.set(buffer.getData(), 0, buffer.getLength() - startTag.length);
-						buffer.reset();
-						buffer.write(startTag);
-						
-						return true;
-					}
-					else if (i >= match.length) {
-						i = 0;
-					}
-				} else {
-					i = 0;
-				}
-				// see if we've passed the stop point:
-				if (i == 0 && pos >= end) {
-					System.out.println("stop point");
-					
-					return false;
-				}
+			return reader.getProgress();
+		}
+	}
+
+	/**
+	 * The bytes of a line as ISO-8859-1 characters, to match a pattern without decoding the line.
+	 */
+	private static class Latin1Sequence implements CharSequence {
+
+		private byte[] bytes;
+		private int start;
+		private int length;
+
+		public Latin1Sequence() {
+		}
+
+		private Latin1Sequence(byte[] bytes, int start, int length) {
+			set(bytes, start, length);
+		}
+
+		public void set(byte[] bytes, int start, int length) {
+			this.bytes = bytes;
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes[start + index] & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new Latin1Sequence(bytes, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				sb.append(charAt(i));
 			}
-			
-			return false;
+			return sb.toString();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,303 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.TextPairWritable;
+import com.nextmining.hadoop.util.HadoopUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is a driver to pack a directory of small files into a few block-compressed
+ * SequenceFiles, or into MapFiles for random access by file name(see {@link Reader}), so that
+ * later jobs read a few large files instead of opening every small one.
+ * <p/>
+ * The files are read by {@link CombineWholeFileInputFormat}, many in a map task, and each file is
+ * written as records of its name and bytes: its path relative to the input directory holding it.
+ * The key of a record is a {@link TextPairWritable} of the name and the zero padded index of the
+ * chunk, as a file larger than the chunk size is written in several records, so that every key is
+ * unique and the chunks of a file sort in order. Each reducer writes one file sorted by the keys,
+ * partitioning the names like {@link HashPartitioner} does.
+ *
+ * @author Younggue Bae
+ */
+public class PackFilesJob extends AbstractJob {
+
+	/* conf keys */
+	static final String INPUT_DIRS = "pack.inputDirs";
+
+	static final String PACK_COUNTER_GROUP = "PackFiles";
+
+	private static final PathFilter VISIBLE_FILTER = new PathFilter() {
+		@Override
+		public boolean accept(Path path) {
+			return !path.getName().startsWith("_") && !path.getName().startsWith(".");
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		ToolRunner.run(new Configuration(), new PackFilesJob(), args);
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+		addOption("input", "i", "Path to the directories of the files to pack(comma separated)", true);
+		addOption("output", "o", "The directory pathname for output.", true);
+		addOption("format", null, "The output format(sequence or map, The default is sequence)", false);
+		addOption("numFiles", null, "The number of files to write(The default is 1)", false);
+		addOption("codec", null, "The compression codec class(The default is org.apache.hadoop.io.compress.DefaultCodec)", false);
+		addOption("splitSize", null, "The number of bytes of files read by a mapper(The default is 134217728)", false);
+		addOption("chunkSize", null, "The number of bytes of a record, a larger file is written in several(The default is 67108864)", false);
+
+		parseArguments(args);
+
+		String[] input = getOption("input").split(",");
+		Path output = new Path(getOption("output"));
+		String format = getOption("format", "sequence");
+		if (!format.equals("sequence") && !format.equals("map")) {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		Configuration conf = getConf();
+		StringBuilder inputDirs = new StringBuilder();
+		for (String dir : input) {
+			Path path = new Path(dir.trim());
+			inputDirs.append(inputDirs.length() > 0 ? "," : "").append(path.getFileSystem(conf).makeQualified(path));
+		}
+		conf.set(INPUT_DIRS, inputDirs.toString());
+		if (input.length > 1) {
+			checkUniqueNames(conf.getStrings(INPUT_DIRS), conf);
+		}
+		conf.setLong(FileInputFormat.SPLIT_MAXSIZE,
+				Long.parseLong(getOption("splitSize", String.valueOf(CombineWholeFileInputFormat.DEFAULT_SPLIT_SIZE))));
+		conf.setInt(CombineWholeFileInputFormat.CHUNK_SIZE_KEY,
+				Integer.parseInt(getOption("chunkSize", String.valueOf(CombineWholeFileInputFormat.DEFAULT_CHUNK_SIZE))));
+
+		Job job = Job.getInstance(conf);
+
+		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, PackMapper.class, Reducer.class));
+		job.setJarByClass(PackFilesJob.class);
+		job.setInputFormatClass(CombineWholeFileInputFormat.class);
+		job.setMapOutputKeyClass(TextPairWritable.class);
+		job.setMapOutputValueClass(BytesWritable.class);
+		job.setOutputKeyClass(TextPairWritable.class);
+		job.setOutputValueClass(BytesWritable.class);
+		job.setMapperClass(PackMapper.class);
+		job.setReducerClass(Reducer.class);
+		job.setPartitionerClass(NamePartitioner.class);
+		job.setNumReduceTasks(Integer.parseInt(getOption("numFiles", "1")));
+
+		if (format.equals("map")) {
+			job.setOutputFormatClass(MapFileOutputFormat.class);
+		}
+		else {
+			job.setOutputFormatClass(SequenceFileOutputFormat.class);
+		}
+		FileOutputFormat.setCompressOutput(job, true);
+		FileOutputFormat.setOutputCompressorClass(job,
+				conf.getClassByName(getOption("codec", DefaultCodec.class.getName())).asSubclass(CompressionCodec.class));
+		SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+
+		FileInputFormat.setInputDirRecursive(job, true);
+		FileInputFormat.setInputPaths(job, inputDirs.toString());
+		FileOutputFormat.setOutputPath(job, output);
+
+		boolean success = job.waitForCompletion(true);
+		if (success) {
+			logger.info("packed files == " + job.getCounters().findCounter(PACK_COUNTER_GROUP, "PACKED_FILES").getValue());
+		}
+		return success ? 0 : 1;
+	}
+
+	/**
+	 * Fails if two input directories hold a file of the same relative path, which would be packed
+	 * under the same name.
+	 */
+	static void checkUniqueNames(String[] inputDirs, Configuration conf) throws IOException {
+		Map<String, Path> names = new HashMap<String, Path>();
+		for (String dir : inputDirs) {
+			Path dirPath = new Path(dir);
+			FileSystem fs = dirPath.getFileSystem(conf);
+			RemoteIterator<LocatedFileStatus> files = fs.listFiles(dirPath, true);
+			while (files.hasNext()) {
+				Path file = files.next().getPath();
+				if (!VISIBLE_FILTER.accept(file)) {
+					continue;
+				}
+				String name = toName(file, new Path[] { dirPath });
+				Path other = names.put(name, dirPath);
+				if (other != null && !other.equals(dirPath)) {
+					throw new IllegalArgumentException("The input directories " + other + " and " + dirPath
+							+ " both hold " + name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the path of the file relative to the input directory holding it, or the whole
+	 * path if there is none.
+	 */
+	static String toName(Path file, Path[] inputDirs) {
+		String path = file.toUri().getPath();
+		for (Path dir : inputDirs) {
+			String dirPath = dir.toUri().getPath();
+			if (path.startsWith(dirPath + "/")) {
+				return path.substring(dirPath.length() + 1);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * @return the zero padded index of a chunk, which sorts the chunks of a file in order.
+	 */
+	static String toChunkIndex(int chunk) {
+		return String.format("%010d", chunk);
+	}
+
+	/**
+	 * Keys the chunks of a file by its name and the index of the chunk, zero padded so that the
+	 * chunks sort in order.
+	 */
+	public static class PackMapper extends Mapper<Text, BytesWritable, TextPairWritable, BytesWritable> {
+
+		private Path[] inputDirs;
+		private final Text lastPath = new Text();
+		private int chunk;
+
+		private final TextPairWritable outputKey = new TextPairWritable();
+
+		@Override
+		protected void setup(Context context) throws IOException, InterruptedException {
+			String[] dirs = context.getConfiguration().getStrings(INPUT_DIRS);
+			inputDirs = new Path[dirs.length];
+			for (int i = 0; i < dirs.length; i++) {
+				inputDirs[i] = new Path(dirs[i]);
+			}
+		}
+
+		@Override
+		protected void map(Text key, BytesWritable value, Context context) throws IOException, InterruptedException {
+			if (key.equals(lastPath)) {
+				chunk++;
+			}
+			else {
+				lastPath.set(key);
+				chunk = 0;
+				outputKey.getFirst().set(toName(new Path(key.toString()), inputDirs));
+				context.getCounter(PACK_COUNTER_GROUP, "PACKED_FILES").increment(1);
+			}
+			outputKey.getSecond().set(toChunkIndex(chunk));
+			context.write(outputKey, value);
+		}
+	}
+
+	/**
+	 * Partitions the chunks of a file by its name, as {@link HashPartitioner} partitions the name.
+	 */
+	public static class NamePartitioner extends Partitioner<TextPairWritable, BytesWritable> {
+
+		@Override
+		public int getPartition(TextPairWritable key, BytesWritable value, int numPartitions) {
+			return (key.getFirst().hashCode() & Integer.MAX_VALUE) % numPartitions;
+		}
+	}
+
+	/**
+	 * This class reads the files packed into MapFiles by name, looking the first chunk of a name up
+	 * in the part which its hash partitions it to and reading the chunks after it while the name
+	 * matches.
+	 */
+	public static class Reader implements Closeable {
+
+		private final MapFile.Reader[] readers;
+		private final HashPartitioner<Text, BytesWritable> partitioner = new HashPartitioner<Text, BytesWritable>();
+
+		private final TextPairWritable key = new TextPairWritable();
+		private final BytesWritable value = new BytesWritable();
+
+		/**
+		 * @param dir the output directory of the job.
+		 */
+		public Reader(Path dir, Configuration conf) throws IOException {
+			// not MapFileOutputFormat.getReaders(), which takes the _SUCCESS file for a part
+			FileSystem fs = dir.getFileSystem(conf);
+			FileStatus[] parts = fs.listStatus(dir, VISIBLE_FILTER);
+			Arrays.sort(parts);
+			readers = new MapFile.Reader[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				readers[i] = new MapFile.Reader(parts[i].getPath(), conf);
+			}
+		}
+
+		/**
+		 * Writes the bytes of the file to the stream.
+		 *
+		 * @return false if there is no such file.
+		 */
+		public synchronized boolean copy(String name, OutputStream out) throws IOException {
+			Text nameKey = new Text(name);
+			MapFile.Reader reader = readers[partitioner.getPartition(nameKey, null, readers.length)];
+			if (reader.get(new TextPairWritable(nameKey, new Text(toChunkIndex(0))), value) == null) {
+				return false;
+			}
+			out.write(value.getBytes(), 0, value.getLength());
+			// the other chunks follow
+			while (reader.next(key, value) && key.getFirst().equals(nameKey)) {
+				out.write(value.getBytes(), 0, value.getLength());
+			}
+			return true;
+		}
+
+		/**
+		 * @return the bytes of the file, or null if there is no such file.
+		 */
+		public byte[] get(String name) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			return copy(name, out) ? out.toByteArray() : null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOException error = null;
+			for (MapFile.Reader reader : readers) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.DelimitedRecord;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+import java.io.IOException;
+
+/**
+ * Writes records of a mapper or reducer either to the job's default output or, through
+ * {@link MultipleOutputs}, into sub directories of the output directory named after a query
+ * and/or the value of a partition column:
+ * <pre>
+ *   &lt;output&gt;/[&lt;query&gt;/][c&lt;column&gt;=&lt;value&gt;/]part-m-00000
+ * </pre>
+ * Every distinct sub directory keeps an open writer until {@link #close()}, so the partition
+ * column should have a moderate number of distinct values.
+ */
+public class PartitionedOutput<K, V> {
+
+	/** conf key of the partition column index */
+	public static final String PARTITION_COLUMN = "output.partitionBy";
+
+	private static final String EMPTY_VALUE = "__EMPTY__";
+
+	private final TaskInputOutputContext<?, ?, K, V> context;
+	private final int partitionColumn;
+	private final boolean subdirectories;
+	private MultipleOutputs<K, V> mos;
+
+	private final StringBuilder path = new StringBuilder();
+
+	/**
+	 * @param multiQuery true if records are written per query.
+	 */
+	public PartitionedOutput(TaskInputOutputContext<?, ?, K, V> context, boolean multiQuery) {
+		this.context = context;
+		this.partitionColumn = context.getConfiguration().getInt(PARTITION_COLUMN, -1);
+		this.subdirectories = multiQuery || partitionColumn >= 0;
+		if (subdirectories) {
+			mos = new MultipleOutputs<K, V>(context);
+		}
+	}
+
+	/**
+	 * Sets the partition column of the job and, if records go to sub directories, makes the
+	 * default output lazy so that no empty part files are created.
+	 */
+	public static void configure(Job job, boolean multiQuery, int partitionColumn) {
+		if (partitionColumn >= 0) {
+			job.getConfiguration().setInt(PARTITION_COLUMN, partitionColumn);
+		}
+		if (multiQuery || partitionColumn >= 0) {
+			LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+		}
+		else {
+			job.setOutputFormatClass(TextOutputFormat.class);
+		}
+	}
+
+	/**
+	 * Writes the key/value pair.
+	 *
+	 * @param query the query name, or null if the job has a single query.
+	 * @param record the parsed record, used to look up the partition column.
+	 */
+	public void write(String query, DelimitedRecord record, K key, V value) throws IOException, InterruptedException {
+		if (!subdirectories) {
+			context.write(key, value);
+			return;
+		}
+
+		path.setLength(0);
+		if (query != null) {
+			path.append(query).append('/');
+		}
+		if (partitionColumn >= 0) {
+			path.append('c').append(partitionColumn).append('=');
+			appendEscaped(record.getString(partitionColumn).trim(), path);
+			path.append('/');
+		}
+		path.append("part");
+
+		mos.write(key, value, path.toString());
+	}
+
+	public void close() throws IOException, InterruptedException {
+		if (mos != null) {
+			mos.close();
+		}
+	}
+
+	/**
+	 * Appends the partition value with the characters which are not safe in a path name escaped
+	 * as %XX.
+	 */
+	static void appendEscaped(String value, StringBuilder sb) {
+		if (value.isEmpty() || value.equals(".") || value.equals("..")) {
+			sb.append(EMPTY_VALUE);
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch < ' ' || ch == '/' || ch == '\\' || ch == ':' || ch == '%' || ch == '=' || ch == '*'
+					|| ch == '?' || ch == '"' || ch == '\'' || ch == '{' || ch == '}' || ch == '[' || ch == ']'
+					|| ch == '^' || ch == 0x7f) {
+				sb.append('%').append(Character.toUpperCase(Character.forDigit(ch >> 4, 16)))
+						.append(Character.toUpperCase(Character.forDigit(ch & 0xf, 16)));
+			}
+			else {
+				sb.append(ch);
+			}
+		}
+	}
+
+}
@@ -1,7 +1,14 @@
 package com.nextmining.hadoop.mapreduce;
 
+import com.nextmining.common.util.AhoCorasick;
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.PostingListWritable;
+import com.nextmining.hadoop.io.TextPairWritable;
+import com.nextmining.hadoop.iterator.FileLineIterator;
 import com.nextmining.hadoop.util.HadoopUtil;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
@@ -12,18 +19,36 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.LineReader;
 import org.apache.hadoop.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 
 /**
  * This class is a driver to search lines by key.
+ * <p/>
+ * By default the job is map-only and the mappers write the matching lines straight to the output.
+ * {@code --partitionBy} additionally writes each line into a sub directory per value of the given
+ * column(see {@link PartitionedOutput}), and {@code --dedupe} shuffles the lines to reducers which
+ * write every distinct line once. The keyword prefix of {@code --withTerm} is shuffled apart from
+ * the line, so that the reducers partition on the columns of the line as the mappers do.
+ * <p/>
+ * The keywords are compiled into an {@link AhoCorasick} automaton, so the cost per line does not
+ * depend on the number of keywords. {@code --matchMode} selects whether a search column has to
+ * equal a keyword(exact, the default), start with one(prefix) or contain one(substring), and
+ * {@code --withTerm} prefixes each output line with the keyword which matched.
+ * <p/>
+ * {@code --useIndex} looks up exact keywords in an index built by {@link IndexBuildJob} and reads
+ * only the lines at the postings, instead of running a job over the whole input(or runs the job if
+ * a keyword has too many postings to be indexed). {@code --bloomDir}
+ * instead skips the input files whose Bloom filters(see {@link BloomIndexJob}) do not contain any
+ * keyword.
  * 
  * @author Younggue Bae
  */
@@ -41,7 +66,14 @@ public class SearchJob extends AbstractJob {
 		addOption("output", "o", "The directory pathname for output", true);
 		addOption("delimiter", null, "The delimiter", true);
 		addOption("columns", null, "The column indexs to find(comma separated)", true);
-		addOption("search", null, "The search keyword to find(comma separated)", true);
+		addOption("search", null, "The search keyword to find(comma separated)", false);
+		addOption("searchFile", null, "File of search keywords(one per line), instead of --search", false);
+		addOption("matchMode", null, "How a column matches a keyword.(exact, prefix or substring, The default is exact)", false);
+		addFlag("withTerm", null, "Prefix each output line with the matched keyword");
+		addOption("partitionBy", null, "The column index whose values partition the output into sub directories", false);
+		addFlag("dedupe", null, "Remove duplicate lines in a reduce phase(The default is map-only)");
+		addOption("bloomDir", null, "The Bloom filter directory built by BloomIndexJob, to skip the files without the keywords(exact match of a single column only)", false);
+		addOption("useIndex", null, "The index directory built by IndexBuildJob, to look up the keywords instead of scanning the input", false);
 		
 		parseArguments(args);
 
@@ -63,23 +95,72 @@ public class SearchJob extends AbstractJob {
 		Configuration conf = getConf();
 		conf.set("delimiter", delimiter);
 		conf.set("columns", getOption("columns"));
-		conf.set("search", getOption("search"));
+		String search = getOption("search");
+		String searchFile = getOption("searchFile");
+		if ((search == null) == (searchFile == null)) {
+			throw new IllegalArgumentException("Exactly one of --search and --searchFile must be given!");
+		}
+		if (search != null) {
+			conf.set("search", search);
+		}
+		else {
+			conf.set("searchFile", searchFile);
+		}
+		conf.set("matchMode", MatchMode.of(getOption("matchMode", "exact")).name());
+		conf.setBoolean("withTerm", hasOption("withTerm"));
+		
+		String partitionBy = getOption("partitionBy");
+		boolean dedupe = hasOption("dedupe");
+		
+		String useIndex = getOption("useIndex");
+		if (useIndex != null) {
+			if (!conf.get("matchMode").equals(MatchMode.EXACT.name()) || partitionBy != null || dedupe) {
+				throw new IllegalArgumentException("--useIndex supports only the exact match mode, without --partitionBy and --dedupe!");
+			}
+			if (searchIndex(new Path(useIndex), outputPath, conf)) {
+				return 0;
+			}
+		}
     
 		//Job job = new Job(conf);
 		Job job = Job.getInstance(conf);
     
-    logger.info("search == " + getOption("search"));
+    logger.info("search == " + (search != null ? search : searchFile));
+    logger.info("matchMode == " + conf.get("matchMode"));
     
-    job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SearchMapper.class, Reducer.class));
     job.setJarByClass(SearchJob.class);
-    job.setMapOutputKeyClass(Text.class);
-    job.setMapOutputValueClass(NullWritable.class);
-    job.setOutputKeyClass(NullWritable.class);
-    job.setOutputValueClass(Text.class);
-    job.setMapperClass(SearchMapper.class);
     job.setInputFormatClass(TextInputFormat.class);
-    job.setReducerClass(SearchReducer.class);
-    job.setOutputFormatClass(TextOutputFormat.class);
+    if (dedupe) {
+    	job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SearchDedupeMapper.class, SearchReducer.class));
+    	job.setMapOutputKeyClass(TextPairWritable.class);
+    	job.setMapOutputValueClass(NullWritable.class);
+    	job.setOutputKeyClass(Text.class);
+    	job.setOutputValueClass(NullWritable.class);
+    	job.setMapperClass(SearchDedupeMapper.class);
+    	job.setReducerClass(SearchReducer.class);
+    }
+    else {
+    	job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SearchMapper.class, null));
+    	job.setOutputKeyClass(NullWritable.class);
+    	job.setOutputValueClass(Text.class);
+    	job.setMapperClass(SearchMapper.class);
+    	job.setNumReduceTasks(0);
+    }
+    PartitionedOutput.configure(job, false, partitionBy == null ? -1 : Integer.parseInt(partitionBy));
+    
+    String bloomDir = getOption("bloomDir");
+    if (bloomDir != null) {
+    	BloomFilterSkippingInputFormat.setBloomDir(job, new Path(bloomDir));
+    	String[] columns = conf.get("columns").split(",");
+    	List<String> keywords = SearchCondition.readKeywords(conf);
+    	if (conf.get("matchMode").equals(MatchMode.EXACT.name()) && columns.length == 1
+    			&& keywords.size() <= BloomFilterSkippingInputFormat.MAX_REQUIRED_VALUES) {
+    		BloomFilterSkippingInputFormat.addRequiredValues(job, Integer.parseInt(columns[0].trim()), keywords);
+    	}
+    	else {
+    		logger.warn("Bloom filters are not used(exact match of a single column only)");
+    	}
+    }
     
     FileInputFormat.setInputPaths(job, inputPath);
     FileOutputFormat.setOutputPath(job, outputPath);
@@ -90,21 +171,109 @@ public class SearchJob extends AbstractJob {
 		return 0;
 	}
 	
-	/** SearchMapper */
-	public static class SearchMapper extends Mapper<LongWritable, Text, Text, NullWritable> {
+	/**
+	 * Looks up the keywords in the index and writes the lines at the postings to a single output
+	 * file, without running a job. Each line is matched again so that only the lines which still
+	 * satisfy the search are written.
+	 *
+	 * @return false, writing nothing, if a keyword has too many postings to be indexed.
+	 */
+	static boolean searchIndex(Path indexDir, Path outputPath, Configuration conf) throws IOException {
+		SearchCondition condition = new SearchCondition(conf);
+		List<String> keywords = SearchCondition.readKeywords(conf);
 		
-		private String delimiter;
-		private List<String> search;
-		private int[] columns;
-		
-		@Override
-		public void setup(Context context) throws IOException, InterruptedException {
-			super.setup(context);
+		IndexBuildJob.IndexReader index = new IndexBuildJob.IndexReader(indexDir, conf);
+		try {
+			PostingListWritable postings = new PostingListWritable();
+			PostingListWritable found = new PostingListWritable();
+			for (int column : condition.getColumns()) {
+				for (String keyword : keywords) {
+					if (index.lookup(column, keyword, found)) {
+						if (found.size() == 0) {
+							logger.info("Too many postings to look up, scanning the input: " + keyword);
+							return false;
+						}
+						postings.addAll(found);
+					}
+				}
+			}
+			postings.sort();
+			logger.info("postings == " + postings.size());
 			
-			Configuration conf = context.getConfiguration();
+			HadoopUtil.delete(conf, outputPath);
+			FSDataOutputStream out = outputPath.getFileSystem(conf).create(new Path(outputPath, "part-00000"));
+			FSDataInputStream in = null;
+			int currentFile = -1;
+			long lines = 0;
+			Text line = new Text();
+			Text outValue = new Text();
+			try {
+				for (int i = 0; i < postings.size(); i++) {
+					if (postings.getFileId(i) != currentFile) {
+						if (in != null) {
+							in.close();
+						}
+						currentFile = postings.getFileId(i);
+						Path file = index.getFile(currentFile);
+						in = file.getFileSystem(conf).open(file);
+					}
+					in.seek(postings.getOffset(i));
+					new LineReader(in, 4096).readLine(line);
+					
+					int term = condition.match(line);
+					if (term >= 0) {
+						Text output = condition.toOutput(term, line, outValue);
+						out.write(output.getBytes(), 0, output.getLength());
+						out.write('\n');
+						lines++;
+					}
+				}
+			} finally {
+				if (in != null) {
+					in.close();
+				}
+				out.close();
+			}
+			logger.info("lines == " + lines);
+		} finally {
+			index.close();
+		}
+		return true;
+	}
+	
+	/** How a search column matches a keyword */
+	public enum MatchMode {
+		EXACT, PREFIX, SUBSTRING;
+		
+		public static MatchMode of(String mode) {
+			try {
+				return valueOf(mode.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown match mode: " + mode);
+			}
+		}
+	}
+	
+	/**
+	 * The search keywords and columns of the job.
+	 */
+	static class SearchCondition {
+		
+		private final DelimitedRecord record;
+		private final AhoCorasick search;
+		private final MatchMode matchMode;
+		private final int[] columns;
+		
+		/* the keywords followed by the delimiter, to prefix output lines with */
+		private final byte[][] termPrefixes;
+		
+		SearchCondition(Configuration conf) throws IOException {
+			String delimiter = conf.get("delimiter");
+			record = new DelimitedRecord(delimiter);
 			
-			delimiter = conf.get("delimiter");
-			search = Arrays.asList(conf.get("search").split(","));
+			List<String> keywords = readKeywords(conf);
+			search = new AhoCorasick(keywords);
+			matchMode = MatchMode.valueOf(conf.get("matchMode", MatchMode.EXACT.name()));
 			
 			String[] strColumns = conf.get("columns").split(",");
 			columns = new int[strColumns.length];
@@ -112,39 +281,190 @@ public class SearchJob extends AbstractJob {
 				columns[i] = Integer.parseInt(strColumns[i]);
 			}
 			
-			System.out.println("search == " + search);
-			System.out.println("columns == " + conf.get("columns"));
+			if (conf.getBoolean("withTerm", false)) {
+				termPrefixes = new byte[search.size()][];
+				for (int i = 0; i < termPrefixes.length; i++) {
+					termPrefixes[i] = (search.getTerm(i) + delimiter).getBytes("utf-8");
+				}
+			}
+			else {
+				termPrefixes = null;
+			}
 			
+			System.out.println("search == " + search.size() + " keywords" + (keywords.size() <= 100 ? " " + keywords : ""));
+			System.out.println("matchMode == " + matchMode);
+			System.out.println("columns == " + conf.get("columns"));
 		}
 		
-		@Override
-		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-			String line = value.toString();
-			String[] field = line.split(delimiter);
-			
-			boolean match = false;
+		/**
+		 * Parses the line and matches the search columns against the keywords.
+		 * 
+		 * @return the id of the matched keyword, or -1.
+		 */
+		int match(Text value) {
+			record.set(value);
 			
+			byte[] bytes = record.getBytes();
 			for (int i = 0; i < columns.length; i++) {
-				String searchField = field[columns[i]];
-				
-				if (search.contains(searchField)) {
-					match = true;
-					break;
+				int start = record.getStart(columns[i]);
+				int end = record.getEnd(columns[i]);
+				int term;
+				switch (matchMode) {
+					case PREFIX: term = search.matchPrefix(bytes, start, end); break;
+					case SUBSTRING: term = search.find(bytes, start, end); break;
+					default: term = search.matchExact(bytes, start, end); break;
+				}
+				if (term >= 0) {
+					return term;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * Reads the keywords of the job, from the search file or the search option.
+		 */
+		static List<String> readKeywords(Configuration conf) throws IOException {
+			if (conf.get("searchFile") == null) {
+				return Arrays.asList(conf.get("search").split(","));
+			}
+			
+			List<String> keywords = new ArrayList<String>();
+			FileLineIterator it = new FileLineIterator(HadoopUtil.openStream(new Path(conf.get("searchFile")), conf));
+			try {
+				while (it.hasNext()) {
+					keywords.add(it.next());
 				}
+			} finally {
+				it.close();
+			}
+			return keywords;
+		}
+		
+		int[] getColumns() {
+			return columns;
+		}
+		
+		DelimitedRecord getRecord() {
+			return record;
+		}
+		
+		/**
+		 * Sets {@code out} to the line to output for a match of the keyword.
+		 * 
+		 * @return {@code value} itself, or {@code out} prefixed with the keyword if requested.
+		 */
+		Text toOutput(int term, Text value, Text out) {
+			if (termPrefixes == null) {
+				return value;
+			}
+			out.set(termPrefixes[term]);
+			out.append(value.getBytes(), 0, value.getLength());
+			return out;
+		}
+
+		/**
+		 * Sets {@code out} to the prefix of the output line for a match of the keyword.
+		 *
+		 * @return {@code out}, empty unless the keyword prefix is requested.
+		 */
+		Text toPrefix(int term, Text out) {
+			if (termPrefixes == null) {
+				out.clear();
 			}
+			else {
+				out.set(termPrefixes[term]);
+			}
+			return out;
+		}
+	}
+	
+	/** SearchMapper */
+	public static class SearchMapper extends Mapper<LongWritable, Text, NullWritable, Text> {
+		
+		private SearchCondition condition;
+		private PartitionedOutput<NullWritable, Text> output;
+		
+		private final Text outValue = new Text();
+		
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
 			
-			if (match) {
-				context.write(new Text(line), NullWritable.get());
+			condition = new SearchCondition(context.getConfiguration());
+			output = new PartitionedOutput<NullWritable, Text>(context, false);
+		}
+		
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			int term = condition.match(value);
+			if (term >= 0) {
+				output.write(null, condition.getRecord(), NullWritable.get(), condition.toOutput(term, value, outValue));
+			}
+		}
+		
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			output.close();
+			super.cleanup(context);
+		}
+	}
+	
+	/** SearchDedupeMapper */
+	public static class SearchDedupeMapper extends Mapper<LongWritable, Text, TextPairWritable, NullWritable> {
+		
+		private SearchCondition condition;
+		
+		private final TextPairWritable outKey = new TextPairWritable();
+		
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			
+			condition = new SearchCondition(context.getConfiguration());
+		}
+		
+		@Override
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			int term = condition.match(value);
+			if (term >= 0) {
+				condition.toPrefix(term, outKey.getFirst());
+				outKey.getSecond().set(value);
+				context.write(outKey, NullWritable.get());
 			}
 		}
 	}
 	
 	/** SearchReducer */
-	public static class SearchReducer extends Reducer<Text, NullWritable, Text, NullWritable> {
+	public static class SearchReducer extends Reducer<TextPairWritable, NullWritable, Text, NullWritable> {
+		
+		private DelimitedRecord record;
+		private PartitionedOutput<Text, NullWritable> output;
+		
+		private final Text outKey = new Text();
+		
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			
+			record = new DelimitedRecord(context.getConfiguration().get("delimiter"));
+			output = new PartitionedOutput<Text, NullWritable>(context, false);
+		}
+		
+		@Override
+		protected void reduce(TextPairWritable key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+			Text line = key.getSecond();
+			// partitions on the line, without the keyword prefix
+			record.set(line);
+			outKey.set(key.getFirst());
+			outKey.append(line.getBytes(), 0, line.getLength());
+			output.write(null, record, outKey, NullWritable.get());
+		}
 		
 		@Override
-		protected void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
-			context.write(key, NullWritable.get());
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			output.close();
+			super.cleanup(context);
 		}
 	}
 
@@ -0,0 +1,147 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BytesHashSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * The heavy keys of a reduce-side join, whose records are split over several reducers by a salt.
+ * <p/>
+ * A record of the large input with a heavy key gets one of {@code saltBuckets} salts, and a record
+ * of a small input with a heavy key is written once for each salt, so every record of the large
+ * input still meets every matching record of the small inputs, on one of {@code saltBuckets}
+ * reducers instead of a single one. The salt is appended to the key as a zero byte and the salt
+ * byte, and a key is taken as salted only if the bytes before them are a heavy key.
+ *
+ * @author Younggue Bae
+ */
+public class SkewedKeys {
+
+	public static final String HEAVY_KEYS = "skew.heavyKeys";
+	public static final String SALT_BUCKETS = "skew.saltBuckets";
+
+	/** the largest number of salts of one byte */
+	public static final int MAX_SALT_BUCKETS = 256;
+
+	private final BytesHashSet heavyKeys = new BytesHashSet();
+	private final int saltBuckets;
+	private final byte[] suffix = new byte[2];
+	private int nextSalt;
+
+	/**
+	 * Reads the heavy keys set by {@link #setHeavyKeys(Configuration, Collection, int)}.
+	 */
+	public SkewedKeys(Configuration conf) {
+		for (String key : conf.getTrimmedStrings(HEAVY_KEYS)) {
+			heavyKeys.add(StringUtils.hexStringToByte(key));
+		}
+		saltBuckets = conf.getInt(SALT_BUCKETS, 1);
+		// spread the salts of the tasks, which each start from their own
+		nextSalt = new Random().nextInt(saltBuckets);
+	}
+
+	/**
+	 * @return true if the configuration has heavy keys.
+	 */
+	public static boolean isSkewed(Configuration conf) {
+		return conf.getTrimmedStrings(HEAVY_KEYS).length > 0;
+	}
+
+	/**
+	 * Sets the heavy keys, hex encoded since a key may hold any bytes.
+	 */
+	public static void setHeavyKeys(Configuration conf, Collection<Text> keys, int saltBuckets) {
+		if (saltBuckets < 2 || saltBuckets > MAX_SALT_BUCKETS) {
+			throw new IllegalArgumentException("The salt buckets must be between 2 and " + MAX_SALT_BUCKETS + ": " + saltBuckets);
+		}
+		List<String> encoded = new ArrayList<String>();
+		for (Text key : keys) {
+			encoded.add(StringUtils.byteToHexString(key.getBytes(), 0, key.getLength()));
+		}
+		conf.setStrings(HEAVY_KEYS, encoded.toArray(new String[encoded.size()]));
+		conf.setInt(SALT_BUCKETS, saltBuckets);
+	}
+
+	/**
+	 * @return the keys whose share of the sampled keys is at least {@code threshold}.
+	 */
+	public static List<Text> findHeavyKeys(List<Text> sampledKeys, double threshold) {
+		Map<Text, Integer> counts = new HashMap<Text, Integer>();
+		for (Text key : sampledKeys) {
+			Integer count = counts.get(key);
+			counts.put(key, count == null ? 1 : count + 1);
+		}
+		List<Text> heavyKeys = new ArrayList<Text>();
+		for (Map.Entry<Text, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() >= threshold * sampledKeys.size()) {
+				heavyKeys.add(entry.getKey());
+			}
+		}
+		return heavyKeys;
+	}
+
+	public int getSaltBuckets() {
+		return saltBuckets;
+	}
+
+	public boolean isHeavy(Text key) {
+		return heavyKeys.contains(key.getBytes(), 0, key.getLength());
+	}
+
+	/**
+	 * Appends the next salt of the task to the key, so the records of the large input are spread
+	 * evenly over the salts.
+	 */
+	public void salt(Text key) {
+		salt(key, nextSalt);
+		nextSalt = (nextSalt + 1) % saltBuckets;
+	}
+
+	/**
+	 * Appends the salt to the key.
+	 */
+	public void salt(Text key, int salt) {
+		suffix[1] = (byte) salt;
+		key.append(suffix, 0, suffix.length);
+	}
+
+	/**
+	 * @return the length of the key without its salt, or -1 if it is not salted.
+	 */
+	public int unsaltedLength(Text key) {
+		int length = key.getLength() - suffix.length;
+		if (length >= 0 && key.getBytes()[length] == 0 && heavyKeys.contains(key.getBytes(), 0, length)) {
+			return length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the salt of the key, if any.
+	 */
+	public void unsalt(Text key) {
+		int length = unsaltedLength(key);
+		if (length >= 0) {
+			key.set(key.getBytes(), 0, length);
+		}
+	}
+
+	/**
+	 * @return the partition of a salted key: that of the key without the salt, plus the salt, so
+	 * the salts of a key go to different reducers. Unsalted keys are partitioned by their hash.
+	 */
+	public int getPartition(Text key, int numPartitions) {
+		int length = unsaltedLength(key);
+		if (length < 0) {
+			return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+		}
+		int hash = WritableComparator.hashBytes(key.getBytes(), length);
+		int salt = key.getBytes()[length + 1] & 0xff;
+		return ((hash & Integer.MAX_VALUE) % numPartitions + salt) % numPartitions;
+	}
+
+}
@@ -1,11 +1,14 @@
 package com.nextmining.hadoop.mapreduce;
 
-import com.nextmining.hadoop.io.Sortable;
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.SortKeySpec;
+import com.nextmining.hadoop.io.SortKeyWritable;
 import com.nextmining.hadoop.util.HadoopUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -14,18 +17,39 @@ import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
 import org.apache.hadoop.util.ToolRunner;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
 
 
 /**
  * This class is a driver to sort the column with simple integer value.
+ * <p/>
+ * The sort column is encoded as a {@link SortKeyWritable}, so the framework sorts and merges the
+ * keys as raw bytes. The sort direction is read from the job configuration by the mappers and
+ * encoded in the key bytes. {@code --sortColumns} sorts by several columns, each with its own
+ * datatype and direction(see {@link SortKeySpec}), encoded into the same key.
+ * <p/>
+ * Each reducer writes its part sorted. With {@code --totalOrder} the driver samples the input for
+ * split points and partitions the keys with {@link TotalOrderPartitioner}, so that the part files
+ * concatenated in order are sorted as a whole.
+ * <p/>
+ * {@code --limit K} writes only the first K records in sort order: each mapper keeps its first K
+ * records in a bounded heap and a single reducer writes the first K of the merged heaps.
  * 
  * @author Younggue Bae
  */
 public class SortJob extends AbstractJob {
 
+	/* conf keys */
+	static final String SORT_KEY_SPEC = "sort.keySpec";
+	static final String LIMIT = "sort.limit";
+
 	public static void main(String[] args) throws Exception {
 		ToolRunner.run(new Configuration(), new SortJob(), args);
 	}
@@ -35,10 +59,16 @@ public class SortJob extends AbstractJob {
 	public int run(String[] args) throws Exception {
 		addOption("input", "i", "Path to job input directory.", true);
 		addOption("output", "o", "The directory pathname for output.", true);
-		addOption("sortColumn", null, "The sort column index.", true);
+		addOption("sortColumn", null, "The sort column index.", false);
 		addOption("sortOption", null, "The sort option.(asc or desc, The default is asc)", false);
-		addOption("sortDatatype", null, "The sort column datatype.(ex. string, numeric)", false);
+		addOption("sortDatatype", null, "The sort column datatype.(string, numeric or long, The default is numeric)", false);
+		addOption("sortColumns", null, "The sort columns, instead of --sortColumn.(column:datatype:direction, comma separated, ex. 3:numeric:desc,0:string:asc)", false);
 		addOption("delimiter", "d", "Delimiter(The default is \\t)", false);
+		addOption("numReducers", null, "The number of reducers", false);
+		addFlag("totalOrder", null, "Sort globally over all reducers, partitioning by the split points of a sample");
+		addOption("samples", null, "The number of lines to sample for --totalOrder(The default is 10000)", false);
+		addOption("sampleSplits", null, "The number of splits to sample for --totalOrder(The default is 10)", false);
+		addOption("limit", null, "Write the first K records only, selected map-side(one reducer)", false);
 
 		parseArguments(args);
 
@@ -48,6 +78,7 @@ public class SortJob extends AbstractJob {
 		String sortColumnIndex = getOption("sortColumn");
 		String sortOption = getOption("sortOption", "asc");
 		String sortDatatype = getOption("sortDatatype", "numeric");
+		String sortColumns = getOption("sortColumns");
 		String delimiter = getOption("delimiter");
 		
     if (delimiter.equals("\\t")) {
@@ -56,14 +87,15 @@ public class SortJob extends AbstractJob {
 
 		Configuration conf = getConf();
 
-		conf.setInt("sortColumn", Integer.parseInt(sortColumnIndex));
-		conf.set("sortOption", sortOption);
-		conf.set("sortDatatype", sortDatatype);
+		SortKeySpec keySpec = toKeySpec(sortColumnIndex, sortOption, sortDatatype, sortColumns);
+		conf.set(SORT_KEY_SPEC, keySpec.toString());
 		conf.set("delimiter", delimiter);
+		String limit = getOption("limit");
+		if (limit != null) {
+			conf.setInt(LIMIT, Integer.parseInt(limit));
+		}
 
-		logger.info("sortColumn == " + sortColumnIndex);
-		logger.info("sortOption == " + sortOption);
-		logger.info("sortDatatype == " + sortDatatype);
+		logger.info("sortColumns == " + keySpec);
 		logger.info("delimiter == " + delimiter);
 
 		Path[] inputPath = new Path[input.length];
@@ -82,7 +114,7 @@ public class SortJob extends AbstractJob {
 		//job.setJobName("Sort" + "(" + srtInputs + ")");
 		job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, SortMapper.class, Reducer.class));
 		job.setJarByClass(SortJob.class);
-		job.setMapOutputKeyClass(Sortable.class);
+		job.setMapOutputKeyClass(SortKeyWritable.class);
 		job.setMapOutputValueClass(Text.class);
 		job.setOutputKeyClass(Text.class);
 		job.setOutputValueClass(NullWritable.class);
@@ -90,22 +122,111 @@ public class SortJob extends AbstractJob {
 		job.setInputFormatClass(TextInputFormat.class);
 		job.setReducerClass(SortReducer.class);
 		job.setOutputFormatClass(TextOutputFormat.class);
+		if (getOption("numReducers") != null) {
+			job.setNumReduceTasks(Integer.parseInt(getOption("numReducers")));
+		}
+		if (limit != null) {
+			job.setJobName(HadoopUtil.getCustomJobName(getClass().getSimpleName(), job, TopKMapper.class, TopKReducer.class));
+			job.setMapperClass(TopKMapper.class);
+			job.setReducerClass(TopKReducer.class);
+			job.setNumReduceTasks(1);
+		}
 
 		FileInputFormat.setInputPaths(job, inputPath);
 		FileOutputFormat.setOutputPath(job, outputPath);
 		HadoopUtil.delete(conf, outputPath);
 
-		job.waitForCompletion(true);
+		Path partitionPath = null;
+		if (hasOption("totalOrder") && job.getNumReduceTasks() > 1 && limit == null) {
+			partitionPath = new Path(outputPath.getParent(), "." + outputPath.getName() + "_partitions");
+			LineSampler sampler = new LineSampler(Integer.parseInt(getOption("samples", "10000")),
+					Integer.parseInt(getOption("sampleSplits", "10")));
+			writePartitionFile(job, sampler, partitionPath);
+		}
+
+		try {
+			job.waitForCompletion(true);
+		} finally {
+			if (partitionPath != null) {
+				HadoopUtil.delete(conf, partitionPath);
+			}
+		}
 
 		return 0;
 	}
+
+	/**
+	 * @return the sort key spec of either the single sort column options or the sort columns option.
+	 */
+	static SortKeySpec toKeySpec(String sortColumn, String sortOption, String sortDatatype, String sortColumns) {
+		if ((sortColumn == null) == (sortColumns == null)) {
+			throw new IllegalArgumentException("Exactly one of --sortColumn and --sortColumns must be given!");
+		}
+		return sortColumns != null ? SortKeySpec.parse(sortColumns)
+				: SortKeySpec.of(Integer.parseInt(sortColumn), sortDatatype, sortOption);
+	}
+
+	/**
+	 * Samples the sort keys of the input and writes the split points of the reducers, so that the
+	 * keys of reducer i all sort before the keys of reducer i + 1 with {@link TotalOrderPartitioner}.
+	 * If the sample has fewer distinct keys than reducers, the number of reducers is reduced.
+	 */
+	static void writePartitionFile(Job job, LineSampler sampler, Path partitionPath) throws IOException,
+			InterruptedException {
+		Configuration conf = job.getConfiguration();
+		DelimitedRecord record = new DelimitedRecord(conf.get("delimiter", "\t"));
+		SortKeySpec keySpec = SortKeySpec.parse(conf.get(SORT_KEY_SPEC));
+
+		List<SortKeyWritable> keys = new ArrayList<SortKeyWritable>();
+		for (Text line : sampler.sample(job)) {
+			record.set(line);
+			SortKeyWritable key = new SortKeyWritable();
+			try {
+				keySpec.build(record, key);
+			} catch (RuntimeException e) {
+				continue;
+			}
+			keys.add(key);
+		}
+		Collections.sort(keys);
+
+		int numReducers = job.getNumReduceTasks();
+		List<SortKeyWritable> splitPoints = new ArrayList<SortKeyWritable>();
+		for (int i = 1; i < numReducers && !keys.isEmpty(); i++) {
+			SortKeyWritable key = keys.get((int) ((long) i * keys.size() / numReducers));
+			if (splitPoints.isEmpty() || key.compareTo(splitPoints.get(splitPoints.size() - 1)) > 0) {
+				splitPoints.add(key);
+			}
+		}
+		if (splitPoints.size() + 1 < numReducers) {
+			logger.warn("Too few distinct sort keys in the sample, reducers == " + (splitPoints.size() + 1));
+			job.setNumReduceTasks(splitPoints.size() + 1);
+		}
+		logger.info("sampled keys == " + keys.size() + ", split points == " + splitPoints.size());
+
+		HadoopUtil.delete(conf, partitionPath);
+		SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(partitionPath),
+				SequenceFile.Writer.keyClass(SortKeyWritable.class), SequenceFile.Writer.valueClass(NullWritable.class));
+		try {
+			for (SortKeyWritable splitPoint : splitPoints) {
+				writer.append(splitPoint, NullWritable.get());
+			}
+		} finally {
+			writer.close();
+		}
+
+		TotalOrderPartitioner.setPartitionFile(conf, partitionPath);
+		// the byte trie of the natural order misroutes keys with 0xff bytes, which descending keys are full of
+		conf.setBoolean(TotalOrderPartitioner.NATURAL_ORDER, false);
+		job.setPartitionerClass(TotalOrderPartitioner.class);
+	}
 	
-	public static class SortMapper extends Mapper<LongWritable, Text, Sortable, Text> {
+	public static class SortMapper extends Mapper<LongWritable, Text, SortKeyWritable, Text> {
+
+		private DelimitedRecord record;
+		private SortKeySpec keySpec;
 
-		private String delimiter = "\t";
-		private String sortOption = "ascending";
-		private String sortDatatype;
-		private int sortColumnIndex;
+		private final SortKeyWritable outKey = new SortKeyWritable();
 
 		@Override
 		public void setup(Context context) throws IOException, InterruptedException {
@@ -113,48 +234,138 @@ public class SortJob extends AbstractJob {
 
 			Configuration conf = context.getConfiguration();
 
-			delimiter = conf.get("delimiter", "\t");
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
 
-			String option = conf.get("sortOption", "ascending").toLowerCase();
-			if (option.startsWith("asc")) {
-				sortOption = "ascending";
-			} else if (option.startsWith("desc")) {
-				sortOption = "descending";
-			}
+			keySpec = SortKeySpec.parse(conf.get(SORT_KEY_SPEC));
 
-			System.out.println("sort option == " + option);
-
-			sortColumnIndex = conf.getInt("sortColumn", -1);
-			sortDatatype = conf.get("sortDatatype");
+			System.out.println("sort columns == " + keySpec);
 		}
 		
 		@Override
 		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-			String record = value.toString();
-			String[] field = record.split(delimiter);
+			record.set(value);
 
 			try {
-				String strVal = field[sortColumnIndex];
-				
-				Sortable sortValue = new Sortable(sortOption, sortDatatype, strVal);
-				context.write(sortValue, new Text(record));
-			} catch (Exception e) {
+				keySpec.build(record, outKey);
+				context.write(outKey, value);
+			} catch (RuntimeException e) {
 				e.printStackTrace();
 				System.err.println(e.getMessage());
-				System.err.println("error: record == " + record);
-				System.err.println("errot: sort column == " + field[sortColumnIndex]);
+				System.err.println("error: record == " + value);
+				System.err.println("errot: sort columns == " + keySpec);
 				throw new InterruptedException(e.getMessage());
 			}
 		}
 	}
 
-	public static class SortReducer extends Reducer<Sortable, Text, Text, NullWritable> {
+	public static class SortReducer extends Reducer<SortKeyWritable, Text, Text, NullWritable> {
+
+		@Override
+		protected void reduce(SortKeyWritable key, Iterable<Text> values, Context context) throws IOException,
+				InterruptedException {
+			for (Text val : values) {
+				context.write(val, NullWritable.get());
+			}
+		}
+
+	}
+
+	/**
+	 * Keeps the first K records of the split in a bounded heap and emits them at the end, so that
+	 * the shuffle carries at most K records per mapper.
+	 */
+	public static class TopKMapper extends Mapper<LongWritable, Text, SortKeyWritable, Text> {
+
+		private DelimitedRecord record;
+		private SortKeySpec keySpec;
+		private int limit;
+
+		/* the kept records, the last one in sort order at the head */
+		private PriorityQueue<TopKEntry> heap;
+
+		private final SortKeyWritable key = new SortKeyWritable();
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			Configuration conf = context.getConfiguration();
+
+			record = new DelimitedRecord(conf.get("delimiter", "\t"));
+			keySpec = SortKeySpec.parse(conf.get(SORT_KEY_SPEC));
+			limit = conf.getInt(LIMIT, 0);
+			if (limit <= 0) {
+				throw new IllegalArgumentException("The limit must be positive: " + limit);
+			}
+			heap = new PriorityQueue<TopKEntry>(Math.min(limit, 1 << 16) + 1, Collections.reverseOrder());
+
+			System.out.println("sort columns == " + keySpec + ", limit == " + limit);
+		}
+
+		@Override
+		public void map(LongWritable offset, Text value, Context context) throws IOException, InterruptedException {
+			record.set(value);
+			keySpec.build(record, key);
+
+			TopKEntry entry;
+			if (heap.size() < limit) {
+				entry = new TopKEntry();
+			}
+			else if (key.compareTo(heap.peek().key) < 0) {
+				entry = heap.poll();
+			}
+			else {
+				return;
+			}
+			entry.key.set(key);
+			entry.value.set(value);
+			heap.add(entry);
+		}
+
+		@Override
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			for (TopKEntry entry : heap) {
+				context.write(entry.key, entry.value);
+			}
+			heap.clear();
+			super.cleanup(context);
+		}
+	}
+
+	/** a record kept by {@link TopKMapper} */
+	static class TopKEntry implements Comparable<TopKEntry> {
+		final SortKeyWritable key = new SortKeyWritable();
+		final Text value = new Text();
+
+		@Override
+		public int compareTo(TopKEntry o) {
+			return key.compareTo(o.key);
+		}
+	}
+
+	/**
+	 * Writes the first K records of the merged heaps.
+	 */
+	public static class TopKReducer extends Reducer<SortKeyWritable, Text, Text, NullWritable> {
+
+		private int remaining;
+
+		@Override
+		public void setup(Context context) throws IOException, InterruptedException {
+			super.setup(context);
+
+			remaining = context.getConfiguration().getInt(LIMIT, 0);
+		}
 
 		@Override
-		protected void reduce(Sortable key, Iterable<Text> values, Context context) throws IOException,
+		protected void reduce(SortKeyWritable key, Iterable<Text> values, Context context) throws IOException,
 				InterruptedException {
 			for (Text val : values) {
+				if (remaining <= 0) {
+					return;
+				}
 				context.write(val, NullWritable.get());
+				remaining--;
 			}
 		}
 
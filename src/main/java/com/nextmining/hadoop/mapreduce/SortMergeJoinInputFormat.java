@@ -0,0 +1,319 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.DelimitedRecord;
+import com.nextmining.hadoop.io.JoinKeyWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class is an input format to join the inputs of {@link JoinJob} without a shuffle, when
+ * they are the outputs of jobs with the same partitioner and number of reducers, and each part
+ * file is sorted by the bytes of its key columns joined by the delimiter.
+ * <p/>
+ * The split {@code i} pairs the part file {@code i} of every input, and its reader merges their
+ * lines into the order a reducer of {@link JoinJob} would see: by key, then by the tag of the
+ * input. The reader fails on a line whose key is less than the key before it. The keys it returns
+ * are encoded like those of the map outputs of {@link JoinJob}.
+ *
+ * @author Younggue Bae
+ */
+public class SortMergeJoinInputFormat extends InputFormat<JoinKeyWritable, Text> {
+
+	/**
+	 * Orders the part files by name, which sorts part-r-00000, part-r-00001, ... by partition, so
+	 * that the i-th part of every input holds the same partition.
+	 */
+	private static final Comparator<FileStatus> PART_ORDER = new Comparator<FileStatus>() {
+		@Override
+		public int compare(FileStatus a, FileStatus b) {
+			return a.getPath().getName().compareTo(b.getPath().getName());
+		}
+	};
+
+	@Override
+	public List<InputSplit> getSplits(JobContext context) throws IOException {
+		Configuration conf = context.getConfiguration();
+		int numInputs = JoinJob.getNumInputs(conf);
+
+		List<List<FileStatus>> parts = new ArrayList<List<FileStatus>>();
+		for (int i = 0; i < numInputs; i++) {
+			String[] paths = JoinJob.getInputPaths(conf, i);
+			if (paths.length != 1) {
+				throw new IOException("A sort-merge join input must be one directory: input " + i);
+			}
+			parts.add(listParts(new Path(paths[0]), conf));
+			if (parts.get(i).size() != parts.get(0).size()) {
+				throw new IOException("The inputs are not co-partitioned: " + paths[0] + " has "
+						+ parts.get(i).size() + " part files, the first input " + parts.get(0).size());
+			}
+		}
+
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int p = 0; p < parts.get(0).size(); p++) {
+			Path[] files = new Path[numInputs];
+			long[] lengths = new long[numInputs];
+			for (int i = 0; i < numInputs; i++) {
+				files[i] = parts.get(i).get(p).getPath();
+				lengths[i] = parts.get(i).get(p).getLen();
+			}
+			splits.add(new PartitionSplit(files, lengths, getHosts(parts.get(0).get(p), conf)));
+		}
+		return splits;
+	}
+
+	/**
+	 * @return the files of the directory not starting with '_' or '.', sorted by name.
+	 */
+	private static List<FileStatus> listParts(Path dir, Configuration conf) throws IOException {
+		List<FileStatus> parts = new ArrayList<FileStatus>();
+		FileSystem fs = dir.getFileSystem(conf);
+		for (FileStatus status : fs.listStatus(dir)) {
+			String name = status.getPath().getName();
+			if (status.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+				parts.add(status);
+			}
+		}
+		Collections.sort(parts, PART_ORDER);
+		return parts;
+	}
+
+	private static String[] getHosts(FileStatus file, Configuration conf) throws IOException {
+		BlockLocation[] blocks = file.getPath().getFileSystem(conf).getFileBlockLocations(file, 0, file.getLen());
+		return blocks.length > 0 ? blocks[0].getHosts() : new String[0];
+	}
+
+	@Override
+	public RecordReader<JoinKeyWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new MergingRecordReader();
+	}
+
+	/**
+	 * The part file of the same partition of every input.
+	 */
+	public static class PartitionSplit extends InputSplit implements Writable {
+
+		private Path[] files;
+		private long[] lengths;
+		private String[] hosts;
+
+		public PartitionSplit() {
+		}
+
+		public PartitionSplit(Path[] files, long[] lengths, String[] hosts) {
+			this.files = files;
+			this.lengths = lengths;
+			this.hosts = hosts;
+		}
+
+		public Path getFile(int i) {
+			return files[i];
+		}
+
+		public long getLength(int i) {
+			return lengths[i];
+		}
+
+		public int size() {
+			return files.length;
+		}
+
+		@Override
+		public long getLength() {
+			long length = 0;
+			for (long l : lengths) {
+				length += l;
+			}
+			return length;
+		}
+
+		@Override
+		public String[] getLocations() {
+			return hosts;
+		}
+
+		@Override
+		public void write(DataOutput out) throws IOException {
+			WritableUtils.writeVInt(out, files.length);
+			for (int i = 0; i < files.length; i++) {
+				Text.writeString(out, files[i].toString());
+				WritableUtils.writeVLong(out, lengths[i]);
+			}
+		}
+
+		@Override
+		public void readFields(DataInput in) throws IOException {
+			int size = WritableUtils.readVInt(in);
+			files = new Path[size];
+			lengths = new long[size];
+			for (int i = 0; i < size; i++) {
+				files[i] = new Path(Text.readString(in));
+				lengths[i] = WritableUtils.readVLong(in);
+			}
+			// the locations are only used to schedule the task
+			hosts = new String[0];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (Path file : files) {
+				sb.append(sb.length() > 0 ? "," : "").append(file);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * This class merges the lines of the part files by key and tag.
+	 */
+	static class MergingRecordReader extends RecordReader<JoinKeyWritable, Text> {
+
+		private PartitionSplit split;
+		private int numInputs;
+		private byte[] delimiter;
+		private DelimitedRecord record;
+		private LineRecordReader[] readers;
+		private int[][] keyColumns;
+		private int[][] valueColumns;
+		private byte[] tags;
+		private Text[] keys;
+		private Text[] encodedKeys;
+		private Text[] values;
+		private boolean[] hasNext;
+
+		private final Text previousKey = new Text();
+		private final JoinKeyWritable currentKey = new JoinKeyWritable();
+		private final Text currentValue = new Text();
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException, InterruptedException {
+			split = (PartitionSplit) genericSplit;
+			Configuration conf = context.getConfiguration();
+
+			numInputs = JoinJob.getNumInputs(conf);
+			if (split.size() != numInputs) {
+				throw new IOException("The split has " + split.size() + " files for " + numInputs + " inputs");
+			}
+			String strDelimiter = conf.get("delimiter", "\t");
+			delimiter = strDelimiter.getBytes("utf-8");
+			record = new DelimitedRecord(strDelimiter);
+
+			readers = new LineRecordReader[numInputs];
+			keyColumns = new int[numInputs][];
+			valueColumns = new int[numInputs][];
+			tags = new byte[numInputs];
+			keys = new Text[numInputs];
+			encodedKeys = new Text[numInputs];
+			values = new Text[numInputs];
+			hasNext = new boolean[numInputs];
+			for (int i = 0; i < numInputs; i++) {
+				keyColumns[i] = JoinJob.getKeyColumns(conf, i);
+				valueColumns[i] = JoinJob.getValueColumns(conf, i);
+				tags[i] = JoinJob.toTag(i, numInputs);
+				keys[i] = new Text();
+				encodedKeys[i] = new Text();
+				values[i] = new Text();
+				readers[i] = new LineRecordReader();
+				readers[i].initialize(new FileSplit(split.getFile(i), 0, split.getLength(i), null), context);
+				advance(i);
+			}
+		}
+
+		/**
+		 * Reads the next line of the input.
+		 */
+		private void advance(int i) throws IOException {
+			hasNext[i] = readers[i].nextKeyValue();
+			if (!hasNext[i]) {
+				return;
+			}
+			Text line = readers[i].getCurrentValue();
+			record.set(line);
+
+			previousKey.set(keys[i]);
+			record.copyTo(keyColumns[i], delimiter, keys[i]);
+			if (keys[i].compareTo(previousKey) < 0) {
+				throw new IOException("The input is not sorted by key: " + split.getFile(i) + " has '" + keys[i]
+						+ "' after '" + previousKey + "'");
+			}
+			record.encodeTo(keyColumns[i], encodedKeys[i]);
+			if (valueColumns[i] == null) {
+				values[i].set(line);
+			}
+			else {
+				record.copyTo(valueColumns[i], delimiter, values[i]);
+			}
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException, InterruptedException {
+			int next = -1;
+			for (int i = 0; i < numInputs; i++) {
+				if (hasNext[i]) {
+					int cmp = next < 0 ? -1 : keys[i].compareTo(keys[next]);
+					if (cmp < 0 || (cmp == 0 && tags[i] < tags[next])) {
+						next = i;
+					}
+				}
+			}
+			if (next < 0) {
+				return false;
+			}
+
+			currentKey.getKey().set(encodedKeys[next]);
+			currentKey.setTag(tags[next]);
+			currentValue.set(values[next]);
+			advance(next);
+			return true;
+		}
+
+		@Override
+		public JoinKeyWritable getCurrentKey() {
+			return currentKey;
+		}
+
+		@Override
+		public Text getCurrentValue() {
+			return currentValue;
+		}
+
+		@Override
+		public float getProgress() throws IOException {
+			float progress = 0;
+			long total = split.getLength();
+			for (int i = 0; i < numInputs; i++) {
+				progress += readers[i].getProgress() * (total > 0 ? (float) split.getLength(i) / total : 1.0f / numInputs);
+			}
+			return progress;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (readers != null) {
+				for (LineRecordReader reader : readers) {
+					if (reader != null) {
+						reader.close();
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -23,6 +23,9 @@ import java.io.IOException;
  */
 public class WholeFileInputFormat extends FileInputFormat<NullWritable, BytesWritable> {
 
+	/** the largest array the JVMs allocate */
+	public static final int MAX_FILE_LENGTH = Integer.MAX_VALUE - 8;
+
 	@Override
 	protected boolean isSplitable(JobContext context, Path filename) {
 		return false;
@@ -42,7 +45,7 @@ public class WholeFileInputFormat extends FileInputFormat<NullWritable, BytesWri
 		private FileSplit split;
 		private Configuration conf;
 
-		private final BytesWritable value = new BytesWritable();
+		private BytesWritable value = new BytesWritable();
 		private boolean processed = false;
 
 		@Override
@@ -58,17 +61,22 @@ public class WholeFileInputFormat extends FileInputFormat<NullWritable, BytesWri
 				return false;
 			}
 
+			Path file = split.getPath();
+			if (split.getLength() > MAX_FILE_LENGTH) {
+				throw new IOException("The file is too large to read as a whole(see CombineWholeFileInputFormat to read it in chunks): "
+						+ file + ", " + split.getLength() + " bytes");
+			}
 			int fileLength = (int) split.getLength();
 			byte[] result = new byte[fileLength];
 
-			Path file = split.getPath();
 			FileSystem fs = file.getFileSystem(conf);
 			
 			FSDataInputStream in = null;
 			try {
 				in = fs.open(file);
 				IOUtils.readFully(in, result, 0, fileLength);
-				value.set(result, 0, fileLength);
+				// wraps the array: set() would copy it, and grows by size * 3 / 2 in int arithmetic
+				value = new BytesWritable(result);
 
 			} finally {
 				IOUtils.closeStream(in);
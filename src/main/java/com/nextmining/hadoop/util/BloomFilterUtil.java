@@ -0,0 +1,62 @@
+package com.nextmining.hadoop.util;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+import java.util.Arrays;
+
+/**
+ * This class is Bloom filter utilities.
+ *
+ * @author Younggue Bae
+ */
+public final class BloomFilterUtil {
+
+	private static final double LN2 = Math.log(2);
+
+	private BloomFilterUtil() { }
+
+	/**
+	 * @return the number of bits for n keys at the false positive probability.
+	 */
+	public static int optimalVectorSize(long n, double fpp) {
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("False positive probability must be in (0, 1): " + fpp);
+		}
+		long bits = (long) Math.ceil(-Math.max(n, 1) * Math.log(fpp) / (LN2 * LN2));
+		return (int) Math.min(bits, Integer.MAX_VALUE - 64);
+	}
+
+	/**
+	 * @return the number of hash functions minimizing the false positives of n keys in m bits.
+	 */
+	public static int optimalNumHashes(long n, int m) {
+		return Math.max(1, (int) Math.round((double) m / Math.max(n, 1) * LN2));
+	}
+
+	/**
+	 * Creates a filter for n keys at the false positive probability.
+	 */
+	public static BloomFilter newBloomFilter(long n, double fpp) {
+		int vectorSize = optimalVectorSize(n, fpp);
+		return new BloomFilter(vectorSize, optimalNumHashes(n, vectorSize), Hash.MURMUR_HASH);
+	}
+
+	/**
+	 * @return a key of a copy of {@code b[start, end)}.
+	 */
+	public static Key toKey(byte[] b, int start, int end) {
+		return new Key(Arrays.copyOfRange(b, start, end));
+	}
+
+	/**
+	 * @return the path of the sidecar file of the data file in the Bloom filter directory.
+	 */
+	public static Path sidecarPath(Path bloomDir, Path file) {
+		return new Path(bloomDir, MD5Hash.digest(file.toString()).toString() + ".bloom");
+	}
+
+}
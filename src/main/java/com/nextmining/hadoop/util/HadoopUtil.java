@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * This class is Hadoop utilities.
@@ -23,6 +24,14 @@ public final class HadoopUtil {
 
   private static final Logger log = LoggerFactory.getLogger(HadoopUtil.class);
 
+  /** Orders files by path, as FileStatus.compareTo() does without its raw Comparable. */
+  public static final Comparator<FileStatus> PATH_ORDER = new Comparator<FileStatus>() {
+    @Override
+    public int compare(FileStatus a, FileStatus b) {
+      return a.getPath().compareTo(b.getPath());
+    }
+  };
+
   private HadoopUtil() { }
 
   /**
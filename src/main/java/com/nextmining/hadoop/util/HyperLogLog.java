@@ -0,0 +1,86 @@
+package com.nextmining.hadoop.util;
+
+/**
+ * This class is a HyperLogLog sketch to estimate the number of distinct byte strings in a fixed
+ * amount of memory, e.g. to size a Bloom filter before adding the values.
+ * <p/>
+ * A sketch of precision p keeps 2^p one byte registers and estimates within about
+ * 1.04 / sqrt(2^p) relative error(0.8% for the default 14). The values are hashed to 64 bits, so
+ * the estimate needs no correction for large counts.
+ *
+ * @author Younggue Bae
+ */
+public class HyperLogLog {
+
+	public static final int DEFAULT_PRECISION = 14;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("The precision must be in [4, 18]: " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Adds {@code b[start, end)}.
+	 */
+	public void add(byte[] b, int start, int end) {
+		long hash = hash64(b, start, end);
+		int index = (int) (hash >>> (64 - precision));
+		// the bit below the index bits ends the run of zeros if the rest is zero
+		long rest = (hash << precision) | (1L << (precision - 1));
+		int rank = Long.numberOfLeadingZeros(rest) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values added.
+	 */
+	public long cardinality() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// linear counting is more accurate for small counts
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * @return the 64 bit FNV-1a hash of the bytes, with the bits mixed by the MurmurHash3
+	 * finalizer.
+	 */
+	static long hash64(byte[] b, int start, int end) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			h ^= b[i] & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
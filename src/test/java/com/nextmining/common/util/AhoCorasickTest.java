@@ -0,0 +1,45 @@
+package com.nextmining.common.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class AhoCorasickTest {
+
+    private static int find(AhoCorasick ac, String text) throws Exception {
+        byte[] b = text.getBytes("utf-8");
+        return ac.find(b, 0, b.length);
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers", "모바일"));
+
+        assertEquals(5, ac.size());
+        assertEquals("she", ac.getTerm(find(ac, "ushers")));
+        assertEquals("his", ac.getTerm(find(ac, "ahishers")));
+        assertEquals("모바일", ac.getTerm(find(ac, "LINE 모바일 게임")));
+        assertEquals(-1, find(ac, "hxs"));
+    }
+
+    @Test
+    public void testOverlappingPrefix() throws Exception {
+        // the naive matcher misses "aab" in "aaab"
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("aab"));
+        assertEquals(0, find(ac, "aaab"));
+    }
+
+    @Test
+    public void testPrefixAndExact() throws Exception {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("P100", "P1001", "Q"));
+        byte[] b = "P10012".getBytes("utf-8");
+
+        assertEquals("P1001", ac.getTerm(ac.matchPrefix(b, 0, b.length)));
+        assertEquals(-1, ac.matchExact(b, 0, b.length));
+        assertEquals("P100", ac.getTerm(ac.matchExact(b, 0, 4)));
+        assertEquals(-1, ac.matchPrefix(b, 1, b.length));
+    }
+
+}
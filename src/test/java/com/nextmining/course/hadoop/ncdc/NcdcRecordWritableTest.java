@@ -0,0 +1,141 @@
+package com.nextmining.course.hadoop.ncdc;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NcdcRecordWritableTest {
+
+    private static final String POSITIVE = "0067011990999991950051507004+68750+023550FM-12+038299999V0203301N00671220001CN9999999N9+00001+99999999999";
+    private static final String NEGATIVE = "0043011990999991950051518004+68750+023550FM-12+038299999V0203201N00261220001CN9999999N9-00111+99999999999";
+    private static final String OTHER_STATION = "0043012650999991949032412004+62300+010750FM-12+048599999V0202701N00461220001CN0500001N9+01111+99999999999";
+
+    @Test
+    public void testTemperature() throws Exception {
+        NcdcRecordWritable record = parse(POSITIVE);
+        assertEquals(0, record.getAirTemperature());
+        assertTrue(record.isValidTemperature());
+
+        record = parse(NEGATIVE);
+        assertEquals(-11, record.getAirTemperature());
+        assertTrue(record.isValidTemperature());
+
+        record = parse(OTHER_STATION);
+        assertEquals(111, record.getAirTemperature());
+        assertEquals('1', record.getQuality());
+    }
+
+    @Test
+    public void testMissingTemperature() throws Exception {
+        NcdcRecordWritable record = parse(replace(POSITIVE, 87, "+99999"));
+        assertTrue(record.isMissingTemperature());
+        assertFalse(record.isMalformedTemperature());
+        assertFalse(record.isValidTemperature());
+    }
+
+    @Test
+    public void testMalformedSign() throws Exception {
+        NcdcRecordWritable record = parse(replace(NEGATIVE, 87, "X"));
+        assertTrue(record.isMalformedTemperature());
+        assertFalse(record.isValidTemperature());
+
+        // 다음 줄을 파싱하면 다시 정상
+        record.parse(bytes(NEGATIVE), 0, NEGATIVE.length());
+        assertFalse(record.isMalformedTemperature());
+    }
+
+    @Test
+    public void testQuality() throws Exception {
+        for (char quality : "01459".toCharArray()) {
+            assertTrue(String.valueOf(quality), parse(replace(POSITIVE, 92, String.valueOf(quality))).isValidTemperature());
+        }
+        for (char quality : "2367".toCharArray()) {
+            assertFalse(String.valueOf(quality), parse(replace(POSITIVE, 92, String.valueOf(quality))).isValidTemperature());
+        }
+    }
+
+    @Test
+    public void testShortLine() throws Exception {
+        try {
+            parse(POSITIVE.substring(0, 80));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBadDigit() throws Exception {
+        try {
+            parse(replace(POSITIVE, 20, "X"));
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEpochMinutes() throws Exception {
+        // 1950-05-15 07:00 UTC
+        NcdcRecordWritable record = parse(POSITIVE);
+        assertEquals(1950, record.getYear());
+        assertEquals(-10325820L, record.getEpochMinutes());
+        assertEquals(-10325820L * 60 * 1000, record.getObservationDate().getTime());
+
+        // 1949-03-24 12:00 UTC
+        assertEquals(-10926000L, parse(OTHER_STATION).getEpochMinutes());
+    }
+
+    @Test
+    public void testStationId() throws Exception {
+        assertEquals("011990-99999", parse(POSITIVE).getStationId());
+        assertEquals("012650-99999", parse(OTHER_STATION).getStationId());
+        assertTrue(parse(POSITIVE).getStationIdPacked() < parse(OTHER_STATION).getStationIdPacked());
+    }
+
+    @Test
+    public void testOffset() throws Exception {
+        // 버퍼 중간에서 시작하는 줄
+        String buffer = NEGATIVE + "\n" + OTHER_STATION + "\n";
+        NcdcRecordWritable record = new NcdcRecordWritable();
+        record.parse(bytes(buffer), NEGATIVE.length() + 1, OTHER_STATION.length());
+        assertEquals("012650-99999", record.getStationId());
+        assertEquals(111, record.getAirTemperature());
+    }
+
+    @Test
+    public void testWritable() throws Exception {
+        NcdcRecordWritable record = parse(NEGATIVE);
+        DataOutputBuffer out = new DataOutputBuffer();
+        record.write(out);
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        NcdcRecordWritable copy = new NcdcRecordWritable();
+        copy.readFields(in);
+        assertEquals(record.toString(), copy.toString());
+        assertEquals(record.getEpochMinutes(), copy.getEpochMinutes());
+    }
+
+    private static NcdcRecordWritable parse(String line) {
+        NcdcRecordWritable record = new NcdcRecordWritable();
+        record.parse(bytes(line), 0, line.length());
+        return record;
+    }
+
+    private static String replace(String line, int start, String str) {
+        return line.substring(0, start) + str + line.substring(start + str.length());
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(Charset.forName("US-ASCII"));
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DelimitedRecordTest {
+
+    @Test
+    public void testFields() throws Exception {
+        DelimitedRecord record = new DelimitedRecord("\t");
+        record.set(new Text("게임\t 42 \t\t-1.25"));
+
+        assertEquals(4, record.size());
+        assertEquals("게임", record.getString(0));
+        assertEquals(" 42 ", record.getString(1));
+        assertEquals(0, record.getLength(2));
+        assertTrue(record.equals(0, "게임".getBytes("utf-8")));
+        assertFalse(record.equals(1, "42".getBytes("utf-8")));
+        assertEquals(42L, record.getLong(1));
+        assertEquals(-1.25, record.getDouble(3), 0.0);
+    }
+
+    @Test
+    public void testMultiCharDelimiter() throws Exception {
+        DelimitedRecord record = new DelimitedRecord("||");
+        record.set(new Text("a||b|c||"));
+
+        assertEquals(3, record.size());
+        assertEquals("b|c", record.getString(1));
+        assertEquals("", record.getString(2));
+
+        Text out = new Text();
+        record.copyTo(new int[]{1, 0}, "\t".getBytes("utf-8"), out);
+        assertEquals("b|c\ta", out.toString());
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        DelimitedRecord record = new DelimitedRecord(",");
+        record.set(new Text("0.1,1e3,-9223372036854775808,123456789.123456789,.5"));
+
+        assertEquals(0.1, record.getDouble(0), 0.0);
+        assertEquals(1000.0, record.getDouble(1), 0.0);
+        assertEquals(Long.MIN_VALUE, record.getLong(2));
+        assertEquals(123456789.123456789, record.getDouble(3), 0.0);
+        assertEquals(0.5, record.getDouble(4), 0.0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testLongOverflow() throws Exception {
+        DelimitedRecord record = new DelimitedRecord(",");
+        record.set(new Text("9223372036854775808"));
+        record.getLong(0);
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JoinKeyWritableTest {
+
+    private final DelimitedRecord record = new DelimitedRecord("\t");
+
+    @Test
+    public void testEncodedFields() throws Exception {
+        // the same bytes joined by the delimiter, but not the same fields
+        JoinKeyWritable a = key("a\tbc\tx", new int[] {0, 1}, 0);
+        JoinKeyWritable b = key("ab\tc\tx", new int[] {0, 1}, 0);
+        assertTrue(a.compareTo(b) != 0);
+        assertEquals("a\tbc/0", a.toString());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append('z');
+        }
+        JoinKeyWritable c = key(sb + "\t", new int[] {1, 0}, 3);
+        assertEquals("\t" + sb + "/3", c.toString());
+    }
+
+    @Test
+    public void testRawComparators() throws Exception {
+        JoinKeyWritable[] keys = {
+            key("apple", new int[] {0}, 0), key("apple", new int[] {0}, 1), key("apple", new int[] {0}, 200),
+            key("banana", new int[] {0}, 0)
+        };
+        WritableComparator comparator = WritableComparator.get(JoinKeyWritable.class);
+        WritableComparator grouping = new JoinKeyWritable.KeyComparator();
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = 0; j < keys.length; j++) {
+                assertEquals(Integer.signum(keys[i].compareTo(keys[j])), Integer.signum(compareRaw(comparator, keys[i], keys[j])));
+                assertEquals(Integer.signum(keys[i].getKey().compareTo(keys[j].getKey())),
+                        Integer.signum(compareRaw(grouping, keys[i], keys[j])));
+            }
+        }
+        assertTrue(compareRaw(comparator, keys[0], keys[2]) < 0);
+        assertEquals(0, compareRaw(grouping, keys[0], keys[2]));
+    }
+
+    private JoinKeyWritable key(String line, int[] columns, int tag) {
+        record.set(new Text(line));
+        JoinKeyWritable key = new JoinKeyWritable();
+        record.encodeTo(columns, key.getKey());
+        key.setTag((byte) tag);
+        return key;
+    }
+
+    private static int compareRaw(WritableComparator comparator, JoinKeyWritable a, JoinKeyWritable b) throws Exception {
+        DataOutputBuffer out1 = new DataOutputBuffer();
+        a.write(out1);
+        DataOutputBuffer out2 = new DataOutputBuffer();
+        b.write(out2);
+        return comparator.compare(out1.getData(), 0, out1.getLength(), out2.getData(), 0, out2.getLength());
+    }
+}
@@ -0,0 +1,96 @@
+package com.nextmining.hadoop.io;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SortKeyWritableTest {
+
+    @Test
+    public void testLongOrder() throws Exception {
+        long[] values = {Long.MIN_VALUE, -42L, -1L, 0L, 1L, 42L, Long.MAX_VALUE};
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(compare(longKey(values[i - 1], false), longKey(values[i], false)) < 0);
+            assertTrue(compare(longKey(values[i - 1], true), longKey(values[i], true)) > 0);
+        }
+    }
+
+    @Test
+    public void testDoubleOrder() throws Exception {
+        double[] values = {Double.NEGATIVE_INFINITY, -1e300, -2.5, -0.0, 0.0, 1e-300, 2.5, Double.POSITIVE_INFINITY};
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(compare(doubleKey(values[i - 1], false), doubleKey(values[i], false)) < 0);
+            assertTrue(compare(doubleKey(values[i - 1], true), doubleKey(values[i], true)) > 0);
+        }
+    }
+
+    @Test
+    public void testStringOrder() throws Exception {
+        String[] values = {"", "a", "a\u0000", "a\u0000b", "ab", "b", "게임"};
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(compare(stringKey(values[i - 1], false), stringKey(values[i], false)) < 0);
+            assertTrue(compare(stringKey(values[i - 1], true), stringKey(values[i], true)) > 0);
+        }
+    }
+
+    @Test
+    public void testRawComparator() throws Exception {
+        SortKeyWritable a = stringKey("apple", false);
+        SortKeyWritable b = stringKey("banana", false);
+
+        DataOutputBuffer out1 = new DataOutputBuffer();
+        a.write(out1);
+        DataOutputBuffer out2 = new DataOutputBuffer();
+        b.write(out2);
+
+        WritableComparator comparator = WritableComparator.get(SortKeyWritable.class);
+        assertTrue(comparator.compare(out1.getData(), 0, out1.getLength(), out2.getData(), 0, out2.getLength()) < 0);
+        assertEquals(0, comparator.compare(out1.getData(), 0, out1.getLength(), out1.getData(), 0, out1.getLength()));
+    }
+
+    @Test
+    public void testCompositeKey() throws Exception {
+        SortKeySpec spec = SortKeySpec.parse("1:numeric:desc, 0:string");
+        assertEquals("1:numeric:desc,0:string:asc", spec.toString());
+
+        DelimitedRecord record = new DelimitedRecord("\t");
+        String[] lines = {"a\t10", "b\t10", "ab\t2.5", "c\t-1"};
+        SortKeyWritable previous = null;
+        for (String line : lines) {
+            record.set(new Text(line));
+            SortKeyWritable key = new SortKeyWritable();
+            spec.build(record, key);
+            if (previous != null) {
+                assertTrue(line, compare(previous, key) < 0);
+            }
+            previous = key;
+        }
+    }
+
+    private static int compare(SortKeyWritable a, SortKeyWritable b) {
+        return a.compareTo(b);
+    }
+
+    private static SortKeyWritable longKey(long value, boolean descending) {
+        SortKeyWritable key = new SortKeyWritable();
+        key.appendLong(value, descending);
+        return key;
+    }
+
+    private static SortKeyWritable doubleKey(double value, boolean descending) {
+        SortKeyWritable key = new SortKeyWritable();
+        key.appendDouble(value, descending);
+        return key;
+    }
+
+    private static SortKeyWritable stringKey(String value, boolean descending) throws Exception {
+        byte[] bytes = value.getBytes("utf-8");
+        SortKeyWritable key = new SortKeyWritable();
+        key.appendString(bytes, 0, bytes.length, descending);
+        return key;
+    }
+}
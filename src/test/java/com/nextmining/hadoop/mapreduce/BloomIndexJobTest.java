@@ -0,0 +1,67 @@
+package com.nextmining.hadoop.mapreduce;
+
+import com.nextmining.hadoop.io.BloomSidecarWritable;
+import com.nextmining.hadoop.util.BloomFilterUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.hadoop.util.bloom.Key;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BloomIndexJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBlankKeyColumn() throws Exception {
+        File input = folder.newFolder("input");
+        File data = new File(input, "data.txt");
+        OutputStream out = new FileOutputStream(data);
+        try {
+            // 두 번째 열이 비었거나 공백뿐인 줄, 열이 모자란 줄
+            out.write("a\t\tx\nb\t   \ty\nc\tk1\tz\nd\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        File bloomDir = new File(folder.getRoot(), "bloom");
+
+        Configuration conf = new Configuration();
+        int exitCode = ToolRunner.run(conf, new BloomIndexJob(), new String[] {
+                "--input", input.getAbsolutePath(),
+                "--output", bloomDir.getAbsolutePath(),
+                "--columns", "0,1"
+        });
+        assertEquals(0, exitCode);
+
+        Path file = FileSystem.getLocal(conf).makeQualified(new Path(data.getAbsolutePath()));
+        BloomSidecarWritable sidecar = BloomIndexJob.readSidecar(new Path(bloomDir.getAbsolutePath()), file, conf);
+        assertNotNull(sidecar);
+        assertTrue(sidecar.mightContain(0, keys("a", "zz")));
+        assertTrue(sidecar.mightContain(0, keys("d")));
+        assertTrue(sidecar.mightContain(1, keys("k1")));
+        assertFalse(sidecar.mightContain(1, keys("a", "b", "x")));
+    }
+
+    private static Key[] keys(String... values) throws Exception {
+        Key[] keys = new Key[values.length];
+        for (int i = 0; i < values.length; i++) {
+            byte[] b = values[i].getBytes("UTF-8");
+            keys[i] = BloomFilterUtil.toKey(b, 0, b.length);
+        }
+        return keys;
+    }
+
+}